@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite;
+
+import io.vertx.core.Future;
+import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.streams.ReadStream;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link AsyncMap} with operations specific to Apache Ignite.
+ *
+ * @see IgniteClusterManager#getIgniteAsyncMap(String)
+ */
+public interface IgniteAsyncMap<K, V> extends AsyncMap<K, V> {
+
+  /**
+   * Gets the values of several keys with a single cluster operation.
+   *
+   * @param keys the keys.
+   * @return a future notified with the entries of the keys present in the map.
+   */
+  Future<Map<K, V>> getAll(Set<? extends K> keys);
+
+  /**
+   * Puts several entries with a single cluster operation.
+   *
+   * @param entries the entries.
+   * @return a future notified when the entries have been put.
+   */
+  Future<Void> putAll(Map<? extends K, ? extends V> entries);
+
+  /**
+   * Like {@link #putAll(Map)} but the entries expire after a time to live.
+   *
+   * @param entries the entries.
+   * @param ttl     the time to live in ms.
+   * @return a future notified when the entries have been put.
+   */
+  Future<Void> putAll(Map<? extends K, ? extends V> entries, long ttl);
+
+  /**
+   * Removes several keys with a single cluster operation.
+   *
+   * @param keys the keys.
+   * @return a future notified when the keys have been removed.
+   */
+  Future<Void> removeAll(Set<? extends K> keys);
+
+  /**
+   * Runs an entry processor against an entry, on the node owning it. The processor sees unmarshalled keys and values
+   * and updates the entry atomically, so read-modify-write operations need a single cluster round trip and no retry.
+   * The processor is serialized and sent to the node owning the entry, its class must be available there.
+   *
+   * @param key       the key.
+   * @param processor the entry processor.
+   * @return a future notified with the result of the processor.
+   */
+  <T> Future<T> invoke(K key, CacheEntryProcessor<K, V, T> processor);
+
+  /**
+   * Like {@link #invoke(Object, CacheEntryProcessor)} but for several entries, with a single cluster operation.
+   *
+   * @param keys      the keys.
+   * @param processor the entry processor.
+   * @return a future notified with the results of the processor, by key.
+   */
+  <T> Future<Map<K, T>> invokeAll(Set<? extends K> keys, CacheEntryProcessor<K, V, T> processor);
+
+  /**
+   * Streams the entries of the map, fetching them by pages of the default scan query page size.
+   * See {@link #entriesStream(int)} for how to stop reading before the end.
+   *
+   * @return stream of entries.
+   */
+  ReadStream<Map.Entry<K, V>> entriesStream();
+
+  /**
+   * Streams the entries of the map. A page of entries is fetched only when the previous one has been consumed,
+   * so the whole map is never held in memory.
+   * <p>
+   * The stream reads the map with a scan query cursor, closed when the stream ends or fails. To stop reading
+   * before the end, set a {@code null} handler, which closes the cursor. A stream left paused without removing its
+   * handler keeps its cursor, and the resources held by the cluster for it, open.
+   *
+   * @param pageSize number of entries fetched at once.
+   * @return stream of entries.
+   */
+  ReadStream<Map.Entry<K, V>> entriesStream(int pageSize);
+}
@@ -18,6 +18,8 @@
 package io.vertx.spi.cluster.ignite;
 
 import io.vertx.core.*;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.Deployment;
 import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
@@ -26,15 +28,26 @@ import io.vertx.core.shareddata.Counter;
 import io.vertx.core.shareddata.Lock;
 import io.vertx.core.spi.cluster.*;
 import io.vertx.spi.cluster.ignite.impl.AsyncMapImpl;
+import io.vertx.spi.cluster.ignite.impl.BufferedCounterImpl;
+import io.vertx.spi.cluster.ignite.impl.CounterImpl;
 import io.vertx.spi.cluster.ignite.impl.IgniteNodeInfo;
+import io.vertx.spi.cluster.ignite.impl.LockHelper;
 import io.vertx.spi.cluster.ignite.impl.MapImpl;
+import io.vertx.spi.cluster.ignite.impl.ReservingCounterImpl;
 import io.vertx.spi.cluster.ignite.impl.SubsMapHelper;
 import org.apache.ignite.*;
+import org.apache.ignite.cache.CacheAtomicityMode;
+import org.apache.ignite.cache.CacheMode;
+import org.apache.ignite.cache.CacheWriteSynchronizationMode;
 import org.apache.ignite.cluster.ClusterNode;
+import org.apache.ignite.configuration.CacheConfiguration;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.apache.ignite.events.DiscoveryEvent;
 import org.apache.ignite.events.Event;
+import org.apache.ignite.internal.IgniteEx;
+import org.apache.ignite.internal.IgniteInternalFuture;
 import org.apache.ignite.internal.IgnitionEx;
+import org.apache.ignite.internal.processors.affinity.AffinityTopologyVersion;
 import org.apache.ignite.internal.util.typedef.F;
 import org.apache.ignite.lang.IgnitePredicate;
 
@@ -45,14 +58,10 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.*;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static javax.cache.expiry.Duration.ETERNAL;
 import static org.apache.ignite.events.EventType.*;
 
@@ -73,12 +82,19 @@ public class IgniteClusterManager implements ClusterManager {
 
   private static final String VERTX_NODE_PREFIX = "vertx.ignite.node.";
 
-  private static final String LOCK_SEMAPHORE_PREFIX = "__vertx.";
+  private static final long DEFAULT_REGISTRATIONS_UPDATE_WINDOW = 20;
+  private static final long DEFAULT_REGISTRATIONS_BATCH_WINDOW = 0;
+  private static final int DEFAULT_REGISTRATIONS_BATCH_SIZE = 512;
+  private static final long DEFAULT_COUNTERS_FLUSH_INTERVAL = 100;
+  private static final int DEFAULT_LOCK_MAX_LOCAL_HANDOFFS = 16;
+  private static final long DEFAULT_COUNTERS_FLUSH_THRESHOLD = 1000;
 
   // Workaround for https://github.com/vert-x3/vertx-ignite/issues/63
   private static final ExpiryPolicy DEFAULT_EXPIRY_POLICY = new ClearExpiryPolicy();
 
   private VertxInternal vertx;
+  // Context owned by the cluster manager, for timers which must not be cancelled when a verticle is undeployed
+  private ContextInternal context;
   private NodeSelector nodeSelector;
 
   private IgniteConfiguration cfg;
@@ -88,7 +104,17 @@ public class IgniteClusterManager implements ClusterManager {
   private String nodeId;
   private NodeInfo nodeInfo;
   private IgniteCache<String, IgniteNodeInfo> nodeInfoMap;
+  private IgniteCache<String, Long> counterMap;
+  // Map wrappers by name, so that only the first retrieval of a map looks up its cache
+  private final ConcurrentMap<String, AsyncMapImpl<?, ?>> asyncMaps = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, MapImpl<?, ?>> syncMaps = new ConcurrentHashMap<>();
+  // Node info of cluster members, dropped when a member leaves
+  private final ConcurrentMap<String, NodeInfo> nodeInfos = new ConcurrentHashMap<>();
+  // Ids of the cluster members, rebuilt on discovery events
+  private volatile List<String> nodes = Collections.emptyList();
+  private long nodesTopologyVersion = -1;
   private SubsMapHelper subsMapHelper;
+  private LockHelper lockHelper;
   private NodeListener nodeListener;
   private IgnitePredicate<Event> eventListener;
 
@@ -96,7 +122,20 @@ public class IgniteClusterManager implements ClusterManager {
 
   private final Object monitor = new Object();
 
-  private ExecutorService lockReleaseExec;
+  private long registrationsUpdateWindow = DEFAULT_REGISTRATIONS_UPDATE_WINDOW;
+  private long registrationsBatchWindow = DEFAULT_REGISTRATIONS_BATCH_WINDOW;
+  private int registrationsBatchSize = DEFAULT_REGISTRATIONS_BATCH_SIZE;
+  private boolean distributedFailoverCleanup;
+  private final Set<String> bufferedCounterNames = ConcurrentHashMap.newKeySet();
+  private final ConcurrentMap<String, BufferedCounterImpl> bufferedCounters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Long> reservingCounterSizes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ReservingCounterImpl> reservingCounters = new ConcurrentHashMap<>();
+  private long countersFlushInterval = DEFAULT_COUNTERS_FLUSH_INTERVAL;
+  private long countersFlushThreshold = DEFAULT_COUNTERS_FLUSH_THRESHOLD;
+  private int lockMaxLocalHandoffs = DEFAULT_LOCK_MAX_LOCAL_HANDOFFS;
+  private long lockLeaseTime;
+  private int mapScanParallelism = 1;
+  private boolean lockLeaseRenewal = true;
 
   /**
    * Default constructor. Cluster manager will get configuration from classpath.
@@ -149,6 +188,213 @@ public class IgniteClusterManager implements ClusterManager {
     return ignite;
   }
 
+  /**
+   * Sets the time window during which changes to the registrations of an event bus address are coalesced
+   * into a single update of the node selector. A value of {@code 0} sends updates as soon as possible.
+   * Must be called before the cluster manager joins the cluster.
+   *
+   * @param registrationsUpdateWindow time window in milliseconds.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setRegistrationsUpdateWindow(long registrationsUpdateWindow) {
+    if (registrationsUpdateWindow < 0) {
+      throw new IllegalArgumentException("registrationsUpdateWindow must not be negative");
+    }
+    this.registrationsUpdateWindow = registrationsUpdateWindow;
+    return this;
+  }
+
+  /**
+   * Sets the time window during which event bus handler registrations and unregistrations are collected
+   * before being written to the cluster with a single operation. A value of {@code 0} writes them on the next
+   * event loop turn. Must be called before the cluster manager joins the cluster.
+   *
+   * @param registrationsBatchWindow time window in milliseconds.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setRegistrationsBatchWindow(long registrationsBatchWindow) {
+    if (registrationsBatchWindow < 0) {
+      throw new IllegalArgumentException("registrationsBatchWindow must not be negative");
+    }
+    this.registrationsBatchWindow = registrationsBatchWindow;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of event bus handler registrations and unregistrations written to the cluster
+   * with a single operation. Must be called before the cluster manager joins the cluster.
+   *
+   * @param registrationsBatchSize maximum batch size.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setRegistrationsBatchSize(int registrationsBatchSize) {
+    if (registrationsBatchSize < 1) {
+      throw new IllegalArgumentException("registrationsBatchSize must be positive");
+    }
+    this.registrationsBatchSize = registrationsBatchSize;
+    return this;
+  }
+
+  /**
+   * Sets whether the cleanup of the registrations and node info of a node which left the cluster is distributed.
+   * When enabled, every surviving node removes the entries stored in its own primary partitions, in parallel.
+   * Otherwise the oldest node removes all of them. Must be called before the cluster manager joins the cluster.
+   *
+   * @param distributedFailoverCleanup whether the failover cleanup is distributed.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setDistributedFailoverCleanup(boolean distributedFailoverCleanup) {
+    this.distributedFailoverCleanup = distributedFailoverCleanup;
+    return this;
+  }
+
+  /**
+   * Makes the counter with the given name buffered. Additions to a buffered counter are collected on each node and
+   * written to the cluster in the background, so the values it returns are eventually consistent.
+   * Must be called before the counter is first retrieved.
+   *
+   * @param name counter name.
+   * @return this cluster manager.
+   * @see #setCountersFlushInterval(long)
+   * @see #setCountersFlushThreshold(long)
+   */
+  public IgniteClusterManager addBufferedCounter(String name) {
+    bufferedCounterNames.add(Objects.requireNonNull(name, "name"));
+    return this;
+  }
+
+  /**
+   * Makes the counter with the given name reserving. A reserving counter reserves ranges of values on the cluster
+   * and serves {@code incrementAndGet} and {@code getAndIncrement} from them, which suits unique id generation.
+   * Returned values are unique across the cluster but only ordered on a given node.
+   * Must be called before the counter is first retrieved.
+   *
+   * @param name        counter name.
+   * @param reserveSize number of values reserved at once.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager addReservingCounter(String name, long reserveSize) {
+    if (reserveSize < 1) {
+      throw new IllegalArgumentException("reserveSize must be positive");
+    }
+    reservingCounterSizes.put(Objects.requireNonNull(name, "name"), reserveSize);
+    return this;
+  }
+
+  /**
+   * Sets the time after which additions to a buffered counter are written to the cluster. It is also the maximum
+   * age of the cluster value used by buffered counters to compute their results. Must be called before the cluster
+   * manager joins the cluster.
+   *
+   * @param countersFlushInterval flush interval in milliseconds.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setCountersFlushInterval(long countersFlushInterval) {
+    if (countersFlushInterval < 1) {
+      throw new IllegalArgumentException("countersFlushInterval must be positive");
+    }
+    this.countersFlushInterval = countersFlushInterval;
+    return this;
+  }
+
+  /**
+   * Sets the absolute amount of pending additions which makes a buffered counter write them to the cluster before
+   * the end of the flush interval. Must be called before the cluster manager joins the cluster.
+   *
+   * @param countersFlushThreshold flush threshold.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setCountersFlushThreshold(long countersFlushThreshold) {
+    if (countersFlushThreshold < 1) {
+      throw new IllegalArgumentException("countersFlushThreshold must be positive");
+    }
+    this.countersFlushThreshold = countersFlushThreshold;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of times a released lock is handed directly to another waiter of the same node before
+   * being released to the cluster. Local handoffs avoid a cluster round trip, the limit gives waiters of other nodes
+   * a chance to get the lock. A value of {@code 0} always releases locks to the cluster.
+   * Must be called before the cluster manager joins the cluster.
+   *
+   * @param lockMaxLocalHandoffs maximum number of consecutive local handoffs.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setLockMaxLocalHandoffs(int lockMaxLocalHandoffs) {
+    if (lockMaxLocalHandoffs < 0) {
+      throw new IllegalArgumentException("lockMaxLocalHandoffs must not be negative");
+    }
+    this.lockMaxLocalHandoffs = lockMaxLocalHandoffs;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of partitions scanned concurrently when all the entries of an async map are read, for
+   * example with {@code entries()}. Each partition is scanned on a worker thread, on the node owning it. A value of
+   * {@code 1}, the default, reads the map with a single scan.
+   *
+   * @param mapScanParallelism maximum number of concurrent partition scans.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setMapScanParallelism(int mapScanParallelism) {
+    if (mapScanParallelism < 1) {
+      throw new IllegalArgumentException("mapScanParallelism must be positive");
+    }
+    this.mapScanParallelism = mapScanParallelism;
+    return this;
+  }
+
+  /**
+   * Sets the lease time of locks. A lock which is not renewed expires after this time and is released automatically,
+   * so a stuck holder does not hold it forever. A value of {@code 0}, the default, disables lock expiry.
+   * Must be called before the cluster manager joins the cluster.
+   *
+   * @param lockLeaseTime lease time in milliseconds.
+   * @return this cluster manager.
+   * @see #setLockLeaseRenewal(boolean)
+   */
+  public IgniteClusterManager setLockLeaseTime(long lockLeaseTime) {
+    if (lockLeaseTime < 0) {
+      throw new IllegalArgumentException("lockLeaseTime must not be negative");
+    }
+    this.lockLeaseTime = lockLeaseTime;
+    return this;
+  }
+
+  /**
+   * Sets whether the leases of locks held by this node are renewed periodically, from the event loop, until the locks
+   * are released. When disabled, a lock is held at most for the lease time. Defaults to {@code true}.
+   * Must be called before the cluster manager joins the cluster.
+   *
+   * @param lockLeaseRenewal whether lock leases are renewed.
+   * @return this cluster manager.
+   */
+  public IgniteClusterManager setLockLeaseRenewal(boolean lockLeaseRenewal) {
+    this.lockLeaseRenewal = lockLeaseRenewal;
+    return this;
+  }
+
+  /**
+   * Returns the number of lock releases of this node not yet written to the cluster.
+   *
+   * @return pending lock releases.
+   */
+  public int getPendingLockReleases() {
+    LockHelper helper = lockHelper;
+    return helper != null ? helper.pendingReleases() : 0;
+  }
+
+  /**
+   * Returns the average time taken by this node to write a lock release to the cluster, since it joined.
+   *
+   * @return average lock release latency in milliseconds.
+   */
+  public double getAverageLockReleaseLatency() {
+    LockHelper helper = lockHelper;
+    return helper != null ? helper.averageReleaseLatency() : 0;
+  }
+
   @Override
   public void init(Vertx vertx, NodeSelector nodeSelector) {
     this.vertx = (VertxInternal) vertx;
@@ -162,36 +408,70 @@ public class IgniteClusterManager implements ClusterManager {
 
   @Override
   public <K, V> void getAsyncMap(String name, Promise<AsyncMap<K, V>> promise) {
-    vertx.executeBlocking(prom -> prom.complete(new AsyncMapImpl<>(getCache(name), vertx)), promise);
+    @SuppressWarnings("unchecked")
+    AsyncMap<K, V> map = (AsyncMap<K, V>) asyncMaps.get(name);
+    if (map != null) {
+      promise.complete(map);
+      return;
+    }
+    vertx.executeBlocking(prom -> {
+      // The cache is started outside of the map, so that a slow start does not block lookups of other names.
+      // Concurrent callers may both start it, getOrCreateCache returns the same cache and the first wrapper wins.
+      AsyncMapImpl<K, V> created = new AsyncMapImpl<>(getCache(name), vertx, mapScanParallelism);
+      @SuppressWarnings("unchecked")
+      AsyncMap<K, V> existing = (AsyncMap<K, V>) asyncMaps.putIfAbsent(name, created);
+      prom.complete(existing != null ? existing : created);
+    }, promise);
+  }
+
+  /**
+   * Returns the async map with the given name, with the operations specific to Apache Ignite.
+   *
+   * @param name map name.
+   * @return a future notified with the map.
+   */
+  public <K, V> Future<IgniteAsyncMap<K, V>> getIgniteAsyncMap(String name) {
+    Promise<AsyncMap<K, V>> promise = vertx.getOrCreateContext().promise();
+    getAsyncMap(name, promise);
+    return promise.future().map(map -> (IgniteAsyncMap<K, V>) map);
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public <K, V> Map<K, V> getSyncMap(String name) {
-    return new MapImpl<>(getCache(name));
+    MapImpl<?, ?> map = syncMaps.get(name);
+    if (map == null) {
+      // Same as for async maps, the cache is not started within the map
+      MapImpl<K, V> created = new MapImpl<>(getCache(name));
+      map = syncMaps.putIfAbsent(name, created);
+      if (map == null) {
+        map = created;
+      }
+    }
+    return (Map<K, V>) map;
   }
 
   @Override
   public void getLockWithTimeout(String name, long timeout, Promise<Lock> promise) {
-    vertx.executeBlocking(prom -> {
-      IgniteSemaphore semaphore = ignite.semaphore(LOCK_SEMAPHORE_PREFIX + name, 1, true, true);
-      boolean locked;
-      long remaining = timeout;
-      do {
-        long start = System.nanoTime();
-        locked = semaphore.tryAcquire(remaining, TimeUnit.MILLISECONDS);
-        remaining = remaining - TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, NANOSECONDS);
-      } while (!locked && remaining > 0);
-      if (locked) {
-        prom.complete(new LockImpl(semaphore, lockReleaseExec));
-      } else {
-        throw new VertxException("Timed out waiting to get lock " + name);
-      }
-    }, false, promise);
+    LockHelper helper = lockHelper;
+    if (helper == null) {
+      promise.fail(new VertxException("Cluster manager is not active"));
+      return;
+    }
+    helper.acquire(name, timeout, promise);
   }
 
   @Override
   public void getCounter(String name, Promise<Counter> promise) {
-    vertx.executeBlocking(prom -> prom.complete(new CounterImpl(ignite.atomicLong(name, 0, true))), promise);
+    if (bufferedCounterNames.contains(name)) {
+      promise.complete(bufferedCounters.computeIfAbsent(name, n -> new BufferedCounterImpl(
+        new CounterImpl(n, counterMap, vertx), vertx, context, countersFlushInterval, countersFlushThreshold)));
+    } else if (reservingCounterSizes.containsKey(name)) {
+      promise.complete(reservingCounters.computeIfAbsent(name, n -> new ReservingCounterImpl(
+        new CounterImpl(n, counterMap, vertx), vertx, reservingCounterSizes.get(n))));
+    } else {
+      promise.complete(new CounterImpl(name, counterMap, vertx));
+    }
   }
 
   @Override
@@ -218,11 +498,22 @@ public class IgniteClusterManager implements ClusterManager {
 
   @Override
   public void getNodeInfo(String id, Promise<NodeInfo> promise) {
+    NodeInfo cached = nodeInfos.get(id);
+    if (cached != null) {
+      promise.complete(cached);
+      return;
+    }
     nodeInfoMap.getAsync(id).listen(fut -> {
       try {
         IgniteNodeInfo value = fut.get();
         if (value != null) {
-          promise.complete(value.unwrap());
+          NodeInfo info = value.unwrap();
+          nodeInfos.put(id, info);
+          // The node may have left while the value was being fetched
+          if (ignite.cluster().node(UUID.fromString(id)) == null) {
+            nodeInfos.remove(id, info);
+          }
+          promise.complete(info);
         } else {
           promise.fail("Not a member of the cluster");
         }
@@ -234,13 +525,7 @@ public class IgniteClusterManager implements ClusterManager {
 
   @Override
   public List<String> getNodes() {
-    try {
-      return ignite.cluster().nodes().stream()
-        .map(IgniteClusterManager::nodeId).collect(Collectors.toList());
-    } catch (IllegalStateException e) {
-      log.debug(e.getMessage());
-      return Collections.emptyList();
-    }
+    return nodes;
   }
 
   @Override
@@ -250,18 +535,23 @@ public class IgniteClusterManager implements ClusterManager {
         if (!active) {
           active = true;
 
-          lockReleaseExec = Executors.newCachedThreadPool(r -> new Thread(r, "vertx-ignite-service-release-lock-thread"));
-
           if (!customIgnite) {
             ignite = cfg == null ? Ignition.start(loadConfiguration()) : Ignition.start(cfg);
           }
           nodeId = nodeId(ignite.cluster().localNode());
+          context = createContext();
 
           eventListener = this::listen;
 
           ignite.events().localListen(eventListener, EVT_NODE_JOINED, EVT_NODE_LEFT, EVT_NODE_FAILED);
-          subsMapHelper = new SubsMapHelper(ignite, nodeSelector, vertx);
+          long topologyVersion = ignite.cluster().topologyVersion();
+          updateNodes(topologyVersion, ignite.cluster().nodes());
+          subsMapHelper = new SubsMapHelper(ignite, nodeSelector, vertx, context, registrationsUpdateWindow,
+            registrationsBatchWindow, registrationsBatchSize);
           nodeInfoMap = ignite.getOrCreateCache("__vertx.nodeInfo");
+          counterMap = ignite.getOrCreateCache(counterCacheConfiguration());
+          lockHelper = new LockHelper(ignite, vertx, context, nodeId, lockMaxLocalHandoffs, lockLeaseTime,
+            lockLeaseRenewal);
 
           prom.complete();
         }
@@ -271,16 +561,25 @@ public class IgniteClusterManager implements ClusterManager {
 
   @Override
   public void leave(Promise<Void> promise) {
+    // Pending additions of buffered counters are written while the cache is still available
+    List<Future> flushes = bufferedCounters.values().stream()
+      .map(BufferedCounterImpl::close).collect(Collectors.toList());
+    bufferedCounters.clear();
+    reservingCounters.clear();
+    CompositeFuture.join(flushes).onComplete(ar -> leave0(promise));
+  }
+
+  private void leave0(Promise<Void> promise) {
     vertx.executeBlocking(prom -> {
       synchronized (monitor) {
         if (active) {
           active = false;
-          lockReleaseExec.shutdown();
           try {
             if (eventListener != null) {
               ignite.events().stopLocalListen(eventListener, EVT_NODE_JOINED, EVT_NODE_LEFT, EVT_NODE_FAILED);
             }
-            this.subsMapHelper.leave(ignite);
+            this.subsMapHelper.leave();
+            this.lockHelper.leave();
             if (!customIgnite) {
               ignite.close();
             }
@@ -288,7 +587,17 @@ public class IgniteClusterManager implements ClusterManager {
             log.error(e);
           }
           subsMapHelper = null;
+          lockHelper = null;
+          context = null;
           nodeInfoMap = null;
+          counterMap = null;
+          asyncMaps.clear();
+          syncMaps.clear();
+          nodeInfos.clear();
+          synchronized (this) {
+            nodes = Collections.emptyList();
+            nodesTopologyVersion = -1;
+          }
         }
       }
 
@@ -303,24 +612,37 @@ public class IgniteClusterManager implements ClusterManager {
 
   @Override
   public void addRegistration(String address, RegistrationInfo registrationInfo, Promise<Void> promise) {
-    vertx.executeBlocking(prom -> {
-      subsMapHelper.put(address, registrationInfo)
-        .onComplete(prom);
-    }, false, promise);
+    SubsMapHelper helper = subsMapHelper;
+    if (helper == null) {
+      promise.fail(new VertxException("Cluster manager is not active"));
+      return;
+    }
+    helper.put(address, registrationInfo, promise);
   }
 
   @Override
   public void removeRegistration(String address, RegistrationInfo registrationInfo, Promise<Void> promise) {
-    vertx.executeBlocking(prom -> {
-      subsMapHelper.remove(address, registrationInfo, prom);
-    }, false, promise);
+    SubsMapHelper helper = subsMapHelper;
+    if (helper == null) {
+      promise.fail(new VertxException("Cluster manager is not active"));
+      return;
+    }
+    helper.remove(address, registrationInfo, promise);
   }
 
   @Override
   public void getRegistrations(String address, Promise<List<RegistrationInfo>> promise) {
-    vertx.executeBlocking(prom -> {
-      subsMapHelper.get(address, prom);
-    }, false, promise);
+    SubsMapHelper helper = subsMapHelper;
+    if (helper == null) {
+      promise.fail(new VertxException("Cluster manager is not active"));
+      return;
+    }
+    List<RegistrationInfo> infos = helper.getLocal(address);
+    if (infos != null) {
+      promise.complete(infos);
+      return;
+    }
+    helper.get(address, promise);
   }
 
   boolean listen(Event event) {
@@ -328,6 +650,12 @@ public class IgniteClusterManager implements ClusterManager {
       return false;
     }
 
+    DiscoveryEvent discoveryEvent = (DiscoveryEvent) event;
+    updateNodes(discoveryEvent.topologyVersion(), discoveryEvent.topologyNodes());
+    if (event.type() == EVT_NODE_LEFT || event.type() == EVT_NODE_FAILED) {
+      nodeInfos.remove(nodeId(discoveryEvent.eventNode()));
+    }
+
     vertx.executeBlocking(f -> {
       if (isActive()) {
         switch (event.type()) {
@@ -339,9 +667,15 @@ public class IgniteClusterManager implements ClusterManager {
           case EVT_NODE_LEFT:
           case EVT_NODE_FAILED:
             String id = nodeId(((DiscoveryEvent) event).eventNode());
+            if (distributedFailoverCleanup) {
+              awaitAffinity(((DiscoveryEvent) event).topologyVersion());
+            }
+            if (distributedFailoverCleanup || isMaster()) {
+              cleanSubs(id, distributedFailoverCleanup);
+              cleanNodeInfos(id, distributedFailoverCleanup);
+            }
             if (isMaster()) {
-              cleanSubs(id);
-              cleanNodeInfos(id);
+              lockHelper.removeAllForNode(id);
             }
             if (nodeListener != null) {
                 try {
@@ -400,23 +734,66 @@ public class IgniteClusterManager implements ClusterManager {
     }
   }
 
+  private synchronized void updateNodes(long topologyVersion, Collection<ClusterNode> topology) {
+    // Discovery events and the initial snapshot may race, the most recent topology wins
+    if (topologyVersion > nodesTopologyVersion) {
+      nodesTopologyVersion = topologyVersion;
+      nodes = Collections.unmodifiableList(topology.stream()
+        .map(IgniteClusterManager::nodeId).collect(Collectors.toList()));
+    }
+  }
+
+  private static CacheConfiguration<String, Long> counterCacheConfiguration() {
+    // Counters must not depend on the __vertx.* template of the Ignite configuration: each value must be written on
+    // every node before the operation completes, so that no increment is lost if a node fails
+    return new CacheConfiguration<String, Long>("__vertx.counters")
+      .setCacheMode(CacheMode.REPLICATED)
+      .setAtomicityMode(CacheAtomicityMode.ATOMIC)
+      .setWriteSynchronizationMode(CacheWriteSynchronizationMode.FULL_SYNC)
+      .setReadFromBackup(false);
+  }
+
+  private ContextInternal createContext() {
+    // Not bound to a deployment, so that timers set on it are not cancelled when a verticle is undeployed
+    return vertx.createEventLoopContext((Deployment) null, null, Thread.currentThread().getContextClassLoader());
+  }
+
   private boolean isMaster() {
     return nodeId(ignite.cluster()
       .forOldest().node())
       .equals(nodeId);
   }
 
-  private void cleanSubs(String id) {
+  private void awaitAffinity(long topologyVersion) {
+    // Affinity is reassigned after the discovery event, until then the departed node is still primary for its
+    // partitions and no surviving node would remove the entries stored there.
+    // The public Affinity API answers with whatever version is ready and offers no way to wait for a given one,
+    // so the internal exchange manager is used.
     try {
-      subsMapHelper.removeAllForNode(id);
+      IgniteInternalFuture<AffinityTopologyVersion> fut = ((IgniteEx) ignite).context().cache().context().exchange()
+        .affinityReadyFuture(new AffinityTopologyVersion(topologyVersion));
+      if (fut != null) {
+        fut.get();
+      }
+    } catch (IgniteCheckedException e) {
+      log.error("Failed to wait for affinity of topology version " + topologyVersion, e);
+    }
+  }
+
+  private void cleanSubs(String id, boolean primaryOnly) {
+    try {
+      int removed = subsMapHelper.removeAllForNode(id, primaryOnly);
+      log.debug("Removed " + removed + " subscribers of node " + id);
     } catch (IllegalStateException | CacheException e) {
         log.error("Failed to remove all subscribers", e);
     }
   }
 
-  private void cleanNodeInfos(String nid) {
+  private void cleanNodeInfos(String nid, boolean primaryOnly) {
     try {
-      nodeInfoMap.remove(nid);
+      if (!primaryOnly || ignite.affinity(nodeInfoMap.getName()).isPrimary(ignite.cluster().localNode(), nid)) {
+        nodeInfoMap.remove(nid);
+      }
     } catch (IllegalStateException | CacheException e) {
         log.error("Failed to remove node info", e);
     }
@@ -437,109 +814,6 @@ public class IgniteClusterManager implements ClusterManager {
     return node.id().toString();
   }
 
-  private static class LockImpl implements Lock {
-    private final IgniteSemaphore semaphore;
-    private final Executor lockReleaseExec;
-    private final AtomicBoolean released = new AtomicBoolean();
-
-    private LockImpl(IgniteSemaphore semaphore, Executor lockReleaseExec) {
-      this.semaphore = semaphore;
-      this.lockReleaseExec = lockReleaseExec;
-    }
-
-    @Override
-    public void release() {
-      if (released.compareAndSet(false, true)) {
-        lockReleaseExec.execute(semaphore::release);
-      }
-    }
-  }
-
-  private class CounterImpl implements Counter {
-    private final IgniteAtomicLong cnt;
-
-    private CounterImpl(IgniteAtomicLong cnt) {
-      this.cnt = cnt;
-    }
-
-    @Override
-    public Future<Long> get() {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.get()));
-    }
-
-    @Override
-    public void get(Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      get().onComplete(handler);
-    }
-
-    @Override
-    public Future<Long> incrementAndGet() {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.incrementAndGet()));
-    }
-
-    @Override
-    public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      incrementAndGet().onComplete(handler);
-    }
-
-    @Override
-    public Future<Long> getAndIncrement() {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.getAndIncrement()));
-    }
-
-    @Override
-    public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      getAndIncrement().onComplete(handler);
-    }
-
-    @Override
-    public Future<Long> decrementAndGet() {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.decrementAndGet()));
-    }
-
-    @Override
-    public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      decrementAndGet().onComplete(handler);
-    }
-
-    @Override
-    public Future<Long> addAndGet(long value) {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.addAndGet(value)));
-    }
-
-    @Override
-    public void addAndGet(long value, Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      addAndGet(value).onComplete(handler);
-    }
-
-    @Override
-    public Future<Long> getAndAdd(long value) {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.getAndAdd(value)));
-    }
-
-    @Override
-    public void getAndAdd(long value, Handler<AsyncResult<Long>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      getAndAdd(value).onComplete(handler);
-    }
-
-    @Override
-    public Future<Boolean> compareAndSet(long expected, long value) {
-      return vertx.executeBlocking(fut -> fut.complete(cnt.compareAndSet(expected, value)));
-    }
-
-    @Override
-    public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> handler) {
-      Objects.requireNonNull(handler, "handler");
-      compareAndSet(expected, value).onComplete(handler);
-    }
-  }
-
   private static class ClearExpiryPolicy implements ExpiryPolicy, Serializable {
     @Override
     public Duration getExpiryForCreation() {
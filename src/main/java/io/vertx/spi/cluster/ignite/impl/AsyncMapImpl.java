@@ -17,23 +17,30 @@
 
 package io.vertx.spi.cluster.ignite.impl;
 
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
-import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxException;
-import io.vertx.core.impl.ContextInternal;
 import io.vertx.core.impl.VertxInternal;
-import io.vertx.core.shareddata.AsyncMap;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.spi.cluster.ignite.IgniteAsyncMap;
 import org.apache.ignite.IgniteCache;
-import org.apache.ignite.IgniteException;
+import org.apache.ignite.cache.CacheEntryProcessor;
+import org.apache.ignite.cache.query.Query;
+import org.apache.ignite.cache.query.QueryCursor;
 import org.apache.ignite.cache.query.ScanQuery;
+import org.apache.ignite.configuration.CacheConfiguration;
 import org.apache.ignite.lang.IgniteFuture;
 
 import javax.cache.Cache;
 import javax.cache.expiry.CreatedExpiryPolicy;
 import javax.cache.expiry.Duration;
+import javax.cache.processor.EntryProcessorException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import static io.vertx.spi.cluster.ignite.impl.ClusterSerializationUtils.marshal;
@@ -44,10 +51,15 @@ import static io.vertx.spi.cluster.ignite.impl.ClusterSerializationUtils.unmarsh
  *
  * @author Andrey Gura
  */
-public class AsyncMapImpl<K, V> implements AsyncMap<K, V> {
+public class AsyncMapImpl<K, V> implements IgniteAsyncMap<K, V> {
+
+  // Maximum number of distinct TTLs whose cache views are kept
+  private static final int MAX_TTL_CACHES = 16;
 
   private final VertxInternal vertx;
   private final IgniteCache<K, V> cache;
+  private final int scanParallelism;
+  private final ConcurrentMap<Long, IgniteCache<K, V>> ttlCaches = new ConcurrentHashMap<>();
 
   /**
    * Constructor.
@@ -56,8 +68,21 @@ public class AsyncMapImpl<K, V> implements AsyncMap<K, V> {
    * @param vertx {@link Vertx} instance.
    */
   public AsyncMapImpl(IgniteCache<K, V> cache, VertxInternal vertx) {
+    this(cache, vertx, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param cache           {@link IgniteCache} instance.
+   * @param vertx           {@link Vertx} instance.
+   * @param scanParallelism Maximum number of partitions scanned concurrently by {@link #entries()}, {@code 1} for a
+   *                        single scan of the whole cache.
+   */
+  public AsyncMapImpl(IgniteCache<K, V> cache, VertxInternal vertx, int scanParallelism) {
     this.cache = cache;
     this.vertx = vertx;
+    this.scanParallelism = scanParallelism;
   }
 
   @Override
@@ -105,6 +130,59 @@ public class AsyncMapImpl<K, V> implements AsyncMap<K, V> {
     return execute(cache -> cache.replaceAsync(marshal(k), marshal(oldValue), marshal(newValue)));
   }
 
+  @Override
+  public Future<Map<K, V>> getAll(Set<? extends K> keys) {
+    Map<K, K> marshalled = marshalKeys(keys);
+    return execute(cache -> cache.getAllAsync(marshalled.keySet())).map(all -> {
+      Map<K, V> map = new HashMap<>(all.size() * 4 / 3 + 1);
+      all.forEach((k, v) -> map.put(marshalled.get(k), unmarshal(v)));
+      return map;
+    });
+  }
+
+  @Override
+  public Future<Void> putAll(Map<? extends K, ? extends V> entries) {
+    return putAll(entries, -1);
+  }
+
+  @Override
+  public Future<Void> putAll(Map<? extends K, ? extends V> entries, long ttl) {
+    Map<K, V> marshalled = new HashMap<>(entries.size() * 4 / 3 + 1);
+    entries.forEach((k, v) -> marshalled.put(marshal(k), marshal(v)));
+    return executeWithTtl(cache -> cache.putAllAsync(marshalled), ttl);
+  }
+
+  @Override
+  public Future<Void> removeAll(Set<? extends K> keys) {
+    Set<K> marshalled = new HashSet<>(keys.size() * 4 / 3 + 1);
+    for (K k : keys) {
+      marshalled.add(marshal(k));
+    }
+    return execute(cache -> cache.removeAllAsync(marshalled));
+  }
+
+  @Override
+  public <T> Future<T> invoke(K k, CacheEntryProcessor<K, V, T> processor) {
+    return execute(cache -> cache.invokeAsync(marshal(k), new MarshallingEntryProcessor<>(processor)));
+  }
+
+  @Override
+  public <T> Future<Map<K, T>> invokeAll(Set<? extends K> keys, CacheEntryProcessor<K, V, T> processor) {
+    Map<K, K> marshalled = marshalKeys(keys);
+    return execute(cache -> cache.invokeAllAsync(marshalled.keySet(), new MarshallingEntryProcessor<>(processor)))
+      .map(results -> {
+        Map<K, T> map = new HashMap<>(results.size() * 4 / 3 + 1);
+        results.forEach((k, result) -> {
+          try {
+            map.put(marshalled.get(k), unmarshal(result.get()));
+          } catch (EntryProcessorException e) {
+            throw new VertxException(e);
+          }
+        });
+        return map;
+      });
+  }
+
   @Override
   public Future<Void> clear() {
     return execute(IgniteCache::clearAsync);
@@ -127,16 +205,84 @@ public class AsyncMapImpl<K, V> implements AsyncMap<K, V> {
 
   @Override
   public Future<Map<K, V>> entries() {
+    if (scanParallelism > 1) {
+      return parallelEntries();
+    }
     return vertx.executeBlocking(fut -> {
-      List<Cache.Entry<K, V>> all = cache.query(new ScanQuery<K, V>()).getAll();
-      Map<K, V> map = new HashMap<>(all.size());
-      for (Cache.Entry<K, V> entry : all) {
-        map.put(unmarshal(entry.getKey()), unmarshal(entry.getValue()));
+      Map<K, V> map = new HashMap<>();
+      try (QueryCursor<Cache.Entry<K, V>> cursor = cache.query(new ScanQuery<K, V>())) {
+        for (Cache.Entry<K, V> entry : cursor) {
+          map.put(unmarshal(entry.getKey()), unmarshal(entry.getValue()));
+        }
       }
       fut.complete(map);
     });
   }
 
+  @Override
+  public ReadStream<Map.Entry<K, V>> entriesStream() {
+    return entriesStream(Query.DFLT_PAGE_SIZE);
+  }
+
+  @Override
+  public ReadStream<Map.Entry<K, V>> entriesStream(int pageSize) {
+    return new EntryStream<>(cache, vertx.getOrCreateContext(), pageSize);
+  }
+
+  /**
+   * Marshals keys, mapping them to the original ones so that results do not need to be unmarshalled.
+   */
+  private Map<K, K> marshalKeys(Set<? extends K> keys) {
+    Map<K, K> marshalled = new HashMap<>(keys.size() * 4 / 3 + 1);
+    for (K k : keys) {
+      marshalled.put(marshal(k), k);
+    }
+    return marshalled;
+  }
+
+  private Future<Map<K, V>> parallelEntries() {
+    int partitions = cache.getConfiguration(CacheConfiguration.class).getAffinity().partitions();
+    return execute(IgniteCache::sizeAsync).compose(size -> {
+      Map<K, V> map = new ConcurrentHashMap<>(size);
+      AtomicInteger nextPartition = new AtomicInteger();
+      List<Future> scans = new ArrayList<>();
+      // Each scan targets the primary node of its partition, so the load is spread over the data nodes
+      for (int i = 0; i < Math.min(scanParallelism, partitions); i++) {
+        scans.add(vertx.executeBlocking(fut -> {
+          int partition;
+          while ((partition = nextPartition.getAndIncrement()) < partitions) {
+            try (QueryCursor<Cache.Entry<K, V>> cursor = cache.query(new ScanQuery<K, V>(partition))) {
+              for (Cache.Entry<K, V> entry : cursor) {
+                map.put(unmarshal(entry.getKey()), unmarshal(entry.getValue()));
+              }
+            }
+          }
+          fut.complete();
+        }, false));
+      }
+      return CompositeFuture.all(scans).map(map);
+    });
+  }
+
+  /**
+   * @param ttl Time to live in ms.
+   * @return a view of the cache with an expiry policy for the given TTL, reused by writes with the same TTL
+   */
+  private IgniteCache<K, V> ttlCache(long ttl) {
+    IgniteCache<K, V> res = ttlCaches.get(ttl);
+    if (res == null) {
+      res = cache.withExpiryPolicy(new CreatedExpiryPolicy(new Duration(TimeUnit.MILLISECONDS, ttl)));
+      // Applications typically use a few fixed TTLs, others are not kept to bound memory
+      if (ttlCaches.size() < MAX_TTL_CACHES) {
+        IgniteCache<K, V> prev = ttlCaches.putIfAbsent(ttl, res);
+        if (prev != null) {
+          res = prev;
+        }
+      }
+    }
+    return res;
+  }
+
   private <T> Future<T> execute(Function<IgniteCache<K, V>, IgniteFuture<T>> cacheOp) {
     return executeWithTtl(cacheOp, -1);
   }
@@ -145,19 +291,7 @@ public class AsyncMapImpl<K, V> implements AsyncMap<K, V> {
    * @param ttl Time to live in ms.
    */
   private <T> Future<T> executeWithTtl(Function<IgniteCache<K, V>, IgniteFuture<T>> cacheOp, long ttl) {
-    ContextInternal ctx = vertx.getOrCreateContext();
-    Promise<T> promise = ctx.promise();
-    IgniteCache<K, V> cache0 = ttl > 0 ?
-      cache.withExpiryPolicy(new CreatedExpiryPolicy(new Duration(TimeUnit.MILLISECONDS, ttl))) : cache;
-
-    IgniteFuture<T> future = cacheOp.apply(cache0);
-    future.listen(fut -> {
-      try {
-        promise.complete(unmarshal(future.get()));
-      } catch (IgniteException e) {
-        promise.fail(new VertxException(e));
-      }
-    });
-    return promise.future();
+    IgniteCache<K, V> cache0 = ttl > 0 ? ttlCache(ttl) : cache;
+    return IgniteFutureUtils.execute(vertx, () -> cacheOp.apply(cache0)).map(ClusterSerializationUtils::unmarshal);
   }
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.shareddata.Counter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counter collecting additions in a node-local accumulator and writing them to a shared {@link Counter} in the
+ * background.
+ * <p>
+ * Values returned by this counter may be stale by up to the flush interval. Additions not yet written are lost if
+ * the node crashes. {@link #compareAndSet(long, long)} writes pending additions first and is exact.
+ */
+public class BufferedCounterImpl implements Counter {
+  private static final Logger log = LoggerFactory.getLogger(BufferedCounterImpl.class);
+
+  private final Counter delegate;
+  private final VertxInternal vertx;
+  private final long flushInterval;
+  private final long flushThreshold;
+  private long timerId = -1;
+  private boolean closed;
+  // Additions not yet written, additions being written, and the last value read from the shared counter
+  private long pending;
+  private long inFlight;
+  private long sharedValue;
+  // Until when the shared value may be used
+  private long sharedValueDeadline;
+  // Writes are serialized, so that shared values are received in the order of the writes
+  private boolean flushing;
+  private long flushes;
+  private List<Promise<Void>> flushWaiters = new ArrayList<>();
+
+  /**
+   * @param context        Context of the cluster manager, on which the periodic flush runs.
+   * @param delegate       shared counter.
+   * @param flushInterval  Time in ms after which pending additions are written and the shared value is refreshed.
+   * @param flushThreshold Absolute amount of pending additions which triggers a write.
+   */
+  public BufferedCounterImpl(Counter delegate, VertxInternal vertx, ContextInternal context, long flushInterval,
+                             long flushThreshold) {
+    this.delegate = delegate;
+    this.vertx = vertx;
+    this.flushInterval = flushInterval;
+    this.flushThreshold = flushThreshold;
+    sharedValueDeadline = System.nanoTime();
+    context.runOnContext(v -> {
+      long id = vertx.setPeriodic(flushInterval, tid -> {
+        if (hasPending()) {
+          flush();
+        }
+      });
+      synchronized (this) {
+        if (closed) {
+          vertx.cancelTimer(id);
+        } else {
+          timerId = id;
+        }
+      }
+    });
+  }
+
+  @Override
+  public Future<Long> get() {
+    synchronized (this) {
+      if (System.nanoTime() - sharedValueDeadline < 0) {
+        return Future.succeededFuture(value());
+      }
+    }
+    return flush().map(v -> {
+      synchronized (this) {
+        return value();
+      }
+    });
+  }
+
+  @Override
+  public void get(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    get().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> incrementAndGet() {
+    return addAndGet(1);
+  }
+
+  @Override
+  public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    incrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndIncrement() {
+    return getAndAdd(1);
+  }
+
+  @Override
+  public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndIncrement().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> decrementAndGet() {
+    return addAndGet(-1);
+  }
+
+  @Override
+  public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    decrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> addAndGet(long value) {
+    return Future.succeededFuture(add(value));
+  }
+
+  @Override
+  public void addAndGet(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    addAndGet(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndAdd(long value) {
+    return Future.succeededFuture(add(value) - value);
+  }
+
+  @Override
+  public void getAndAdd(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndAdd(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Boolean> compareAndSet(long expected, long value) {
+    return flush().compose(v -> {
+      long flushesBefore;
+      synchronized (this) {
+        flushesBefore = flushes;
+      }
+      return delegate.compareAndSet(expected, value).onSuccess(set -> {
+        if (set) {
+          synchronized (this) {
+            // A write started meanwhile may return an older or a newer value, the next read refreshes it
+            if (flushes == flushesBefore && !flushing) {
+              updateSharedValue(value);
+            } else {
+              sharedValueDeadline = System.nanoTime();
+            }
+          }
+        }
+      });
+    });
+  }
+
+  @Override
+  public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    compareAndSet(expected, value).onComplete(handler);
+  }
+
+  /**
+   * Stops the periodic flush and writes pending additions.
+   */
+  public Future<Void> close() {
+    long id;
+    synchronized (this) {
+      closed = true;
+      id = timerId;
+    }
+    if (id >= 0) {
+      vertx.cancelTimer(id);
+    }
+    return flush();
+  }
+
+  private long add(long value) {
+    long res;
+    boolean flush;
+    synchronized (this) {
+      pending += value;
+      res = value();
+      flush = !flushing && Math.abs(pending) >= flushThreshold;
+    }
+    if (flush) {
+      flush();
+    }
+    return res;
+  }
+
+  private synchronized boolean hasPending() {
+    return pending != 0;
+  }
+
+  // Additions being written are included, so that results do not drop until the write completes
+  private long value() {
+    return sharedValue + inFlight + pending;
+  }
+
+  private Future<Void> flush() {
+    Promise<Void> promise = vertx.getOrCreateContext().promise();
+    long delta;
+    synchronized (this) {
+      if (flushing) {
+        // Picked up by the write following the current one
+        flushWaiters.add(promise);
+        return promise.future();
+      }
+      delta = startWrite();
+    }
+    write(delta, Collections.singletonList(promise));
+    return promise.future();
+  }
+
+  private long startWrite() {
+    flushing = true;
+    flushes++;
+    inFlight = pending;
+    pending = 0;
+    return inFlight;
+  }
+
+  private void write(long delta, List<Promise<Void>> promises) {
+    delegate.addAndGet(delta).onComplete(ar -> {
+      List<Promise<Void>> next = null;
+      long nextDelta = 0;
+      synchronized (this) {
+        if (ar.succeeded()) {
+          updateSharedValue(ar.result());
+        } else {
+          pending += delta;
+        }
+        inFlight = 0;
+        if (!flushWaiters.isEmpty() || (ar.succeeded() && Math.abs(pending) >= flushThreshold)) {
+          next = flushWaiters;
+          flushWaiters = new ArrayList<>();
+          nextDelta = startWrite();
+        } else {
+          flushing = false;
+        }
+      }
+      if (ar.failed()) {
+        log.debug("Failed to flush counter", ar.cause());
+      }
+      for (Promise<Void> promise : promises) {
+        if (ar.succeeded()) {
+          promise.complete();
+        } else {
+          promise.fail(ar.cause());
+        }
+      }
+      if (next != null) {
+        write(nextDelta, next);
+      }
+    });
+  }
+
+  private void updateSharedValue(long value) {
+    sharedValue = value;
+    sharedValueDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+  }
+}
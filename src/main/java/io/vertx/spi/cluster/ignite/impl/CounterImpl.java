@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.shareddata.Counter;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.MutableEntry;
+import java.util.Objects;
+
+import static io.vertx.spi.cluster.ignite.impl.IgniteFutureUtils.execute;
+
+/**
+ * Counter stored as an entry of an Ignite cache and updated with asynchronous entry processors.
+ */
+public class CounterImpl implements Counter {
+
+  private final String name;
+  private final IgniteCache<String, Long> cache;
+  private final VertxInternal vertx;
+
+  /**
+   * Constructor.
+   *
+   * @param name  counter name, used as cache key.
+   * @param cache {@link IgniteCache} holding the counters.
+   * @param vertx {@link io.vertx.core.Vertx} instance.
+   */
+  public CounterImpl(String name, IgniteCache<String, Long> cache, VertxInternal vertx) {
+    this.name = name;
+    this.cache = cache;
+    this.vertx = vertx;
+  }
+
+  @Override
+  public Future<Long> get() {
+    return execute(vertx, () -> cache.getAsync(name)).map(value -> value != null ? value : 0L);
+  }
+
+  @Override
+  public void get(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    get().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> incrementAndGet() {
+    return addAndGet(1);
+  }
+
+  @Override
+  public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    incrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndIncrement() {
+    return getAndAdd(1);
+  }
+
+  @Override
+  public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndIncrement().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> decrementAndGet() {
+    return addAndGet(-1);
+  }
+
+  @Override
+  public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    decrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> addAndGet(long value) {
+    return execute(vertx, () -> cache.invokeAsync(name, new AddProcessor(value, true)));
+  }
+
+  @Override
+  public void addAndGet(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    addAndGet(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndAdd(long value) {
+    return execute(vertx, () -> cache.invokeAsync(name, new AddProcessor(value, false)));
+  }
+
+  @Override
+  public void getAndAdd(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndAdd(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Boolean> compareAndSet(long expected, long value) {
+    return execute(vertx, () -> cache.invokeAsync(name, new CompareAndSetProcessor(expected, value)));
+  }
+
+  @Override
+  public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    compareAndSet(expected, value).onComplete(handler);
+  }
+
+  private static long value(MutableEntry<String, Long> entry) {
+    Long value = entry.getValue();
+    return value != null ? value : 0L;
+  }
+
+  private static class AddProcessor implements CacheEntryProcessor<String, Long, Long> {
+    private final long delta;
+    private final boolean returnNew;
+
+    private AddProcessor(long delta, boolean returnNew) {
+      this.delta = delta;
+      this.returnNew = returnNew;
+    }
+
+    @Override
+    public Long process(MutableEntry<String, Long> entry, Object... arguments) {
+      long old = value(entry);
+      entry.setValue(old + delta);
+      return returnNew ? old + delta : old;
+    }
+  }
+
+  private static class CompareAndSetProcessor implements CacheEntryProcessor<String, Long, Boolean> {
+    private final long expected;
+    private final long value;
+
+    private CompareAndSetProcessor(long expected, long value) {
+      this.expected = expected;
+      this.value = value;
+    }
+
+    @Override
+    public Boolean process(MutableEntry<String, Long> entry, Object... arguments) {
+      if (value(entry) != expected) {
+        return Boolean.FALSE;
+      }
+      entry.setValue(value);
+      return Boolean.TRUE;
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.VertxException;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.streams.ReadStream;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static io.vertx.spi.cluster.ignite.impl.ClusterSerializationUtils.unmarshal;
+
+/**
+ * Streams the entries of an Ignite cache, fetching them from a scan query cursor one page at a time on a worker
+ * thread. The next page is fetched only when the entries of the previous one have been emitted.
+ * The cursor is closed when the stream ends, fails, or its handler is set to {@code null}.
+ */
+public class EntryStream<K, V> implements ReadStream<Map.Entry<K, V>> {
+
+  private final IgniteCache<K, V> cache;
+  private final ContextInternal context;
+  private final int pageSize;
+  private final Deque<Map.Entry<K, V>> buffer = new ArrayDeque<>();
+  private QueryCursor<Cache.Entry<K, V>> cursor;
+  private Iterator<Cache.Entry<K, V>> iterator;
+  private long demand = Long.MAX_VALUE;
+  private boolean fetching;
+  private boolean exhausted;
+  private boolean closed;
+  private Handler<Map.Entry<K, V>> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+
+  /**
+   * @param pageSize Number of entries fetched at once.
+   */
+  public EntryStream(IgniteCache<K, V> cache, ContextInternal context, int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("pageSize must be positive");
+    }
+    this.cache = cache;
+    this.context = context;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public synchronized EntryStream<K, V> exceptionHandler(Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+
+  @Override
+  public EntryStream<K, V> handler(Handler<Map.Entry<K, V>> handler) {
+    synchronized (this) {
+      this.handler = handler;
+      if (handler == null) {
+        close();
+        return this;
+      }
+    }
+    context.runOnContext(v -> drain());
+    return this;
+  }
+
+  @Override
+  public synchronized EntryStream<K, V> pause() {
+    demand = 0;
+    return this;
+  }
+
+  @Override
+  public EntryStream<K, V> resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+
+  @Override
+  public EntryStream<K, V> fetch(long amount) {
+    if (amount < 0) {
+      throw new IllegalArgumentException("amount must not be negative");
+    }
+    synchronized (this) {
+      demand += amount;
+      if (demand < 0) {
+        demand = Long.MAX_VALUE;
+      }
+    }
+    context.runOnContext(v -> drain());
+    return this;
+  }
+
+  @Override
+  public synchronized EntryStream<K, V> endHandler(Handler<Void> handler) {
+    endHandler = handler;
+    return this;
+  }
+
+  private void drain() {
+    while (true) {
+      Map.Entry<K, V> entry;
+      Handler<Map.Entry<K, V>> h;
+      synchronized (this) {
+        if (closed || handler == null || demand == 0) {
+          return;
+        }
+        entry = buffer.poll();
+        if (entry == null) {
+          if (exhausted) {
+            break;
+          }
+          if (!fetching) {
+            fetching = true;
+            context.<List<Map.Entry<K, V>>>executeBlocking(this::fetchPage, true, ar -> onPage(ar.result(), ar.cause()));
+          }
+          return;
+        }
+        if (demand != Long.MAX_VALUE) {
+          demand--;
+        }
+        h = handler;
+      }
+      h.handle(entry);
+    }
+    Handler<Void> h;
+    synchronized (this) {
+      h = endHandler;
+      close();
+    }
+    if (h != null) {
+      h.handle(null);
+    }
+  }
+
+  private void fetchPage(Promise<List<Map.Entry<K, V>>> promise) {
+    try {
+      if (iterator == null) {
+        cursor = cache.query(new ScanQuery<K, V>().setPageSize(pageSize));
+        iterator = cursor.iterator();
+      }
+      List<Map.Entry<K, V>> page = new ArrayList<>(pageSize);
+      while (page.size() < pageSize && iterator.hasNext()) {
+        Cache.Entry<K, V> entry = iterator.next();
+        page.add(new AbstractMap.SimpleImmutableEntry<>(unmarshal(entry.getKey()), unmarshal(entry.getValue())));
+      }
+      promise.complete(page);
+    } catch (IllegalStateException | CacheException e) {
+      promise.fail(new VertxException(e));
+    }
+  }
+
+  private void onPage(List<Map.Entry<K, V>> page, Throwable failure) {
+    Handler<Throwable> h = null;
+    synchronized (this) {
+      fetching = false;
+      if (closed) {
+        // Closed while the page was being fetched
+        if (cursor != null) {
+          cursor.close();
+        }
+        return;
+      }
+      if (failure != null) {
+        h = exceptionHandler;
+        close();
+      } else {
+        buffer.addAll(page);
+        exhausted = page.size() < pageSize;
+      }
+    }
+    if (failure != null) {
+      if (h != null) {
+        h.handle(failure);
+      }
+    } else {
+      drain();
+    }
+  }
+
+  private synchronized void close() {
+    if (!closed) {
+      closed = true;
+      buffer.clear();
+      // A cursor being read by a page fetch is closed once the fetch completes
+      if (cursor != null && !fetching) {
+        cursor.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.VertxException;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import org.apache.ignite.IgniteException;
+import org.apache.ignite.lang.IgniteFuture;
+
+import javax.cache.CacheException;
+import java.util.function.Supplier;
+
+/**
+ * Bridges asynchronous Ignite operations to Vert.x futures.
+ */
+class IgniteFutureUtils {
+
+  private IgniteFutureUtils() {
+  }
+
+  /**
+   * Starts an asynchronous Ignite operation and completes the returned future on the context of the caller.
+   * Failures, thrown when the operation starts or reported by its future, are wrapped in {@link VertxException}.
+   *
+   * @param vertx     {@link io.vertx.core.Vertx} instance.
+   * @param operation starts the Ignite operation.
+   * @return a future notified with the result of the operation.
+   */
+  static <T> Future<T> execute(VertxInternal vertx, Supplier<IgniteFuture<T>> operation) {
+    ContextInternal ctx = vertx.getOrCreateContext();
+    Promise<T> promise = ctx.promise();
+    try {
+      IgniteFuture<T> future = operation.get();
+      future.listen(fut -> {
+        try {
+          promise.complete(fut.get());
+        } catch (IgniteException | CacheException e) {
+          promise.fail(new VertxException(e));
+        }
+      });
+    } catch (IllegalStateException | IgniteException | CacheException e) {
+      promise.fail(new VertxException(e));
+    }
+    return promise.future();
+  }
+}
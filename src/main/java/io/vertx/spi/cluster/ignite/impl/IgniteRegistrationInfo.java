@@ -16,6 +16,7 @@
 package io.vertx.spi.cluster.ignite.impl;
 
 import io.vertx.core.spi.cluster.RegistrationInfo;
+import org.apache.ignite.cache.affinity.AffinityKeyMapped;
 import org.apache.ignite.binary.BinaryObjectException;
 import org.apache.ignite.binary.BinaryReader;
 import org.apache.ignite.binary.BinaryWriter;
@@ -28,6 +29,8 @@ import java.util.Objects;
  * @author Lukas Prettenthaler
  */
 public class IgniteRegistrationInfo implements Binarylizable {
+  // Collocates all registrations of an address in a single partition
+  @AffinityKeyMapped
   private String address;
   private RegistrationInfo registrationInfo;
 
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.Promise;
+import io.vertx.core.VertxException;
+import io.vertx.core.impl.ContextInternal;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.impl.logging.Logger;
+import io.vertx.core.impl.logging.LoggerFactory;
+import io.vertx.core.shareddata.Lock;
+import org.apache.ignite.Ignite;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CacheEntryEventSerializableFilter;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ModifiedExpiryPolicy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.vertx.spi.cluster.ignite.impl.IgniteFutureUtils.execute;
+
+/**
+ * Cluster-wide locks stored as entries of the {@code __vertx.locks} cache.
+ * <p>
+ * A lock is held by the owner whose id is the value of the entry. Waiters of this node are queued per lock name and
+ * retry when a continuous query reports the removal of the entry, so pending acquisitions do not hold any thread.
+ * A released lock is handed to the next waiter of the same node, up to a limit, without going through the cluster.
+ * <p>
+ * With a lease time, lock entries expire unless renewed, so a lock held by a stuck node is eventually released
+ * without waiting for the node to be detected as failed. A lock whose lease is lost, or past its deadline, is never
+ * handed to a local waiter: it is released to the cluster, where waiters acquire it again.
+ */
+public class LockHelper {
+  private static final Logger log = LoggerFactory.getLogger(LockHelper.class);
+
+  private final IgniteCache<String, String> map;
+  private final VertxInternal vertx;
+  // Context of the cluster manager, renewal timers set on it outlive the verticles holding locks
+  private final ContextInternal context;
+  private final String nodeId;
+  private final int maxLocalHandoffs;
+  // View of the locks cache setting the lease expiry on creation and renewal
+  private final IgniteCache<String, String> leaseMap;
+  private final long leaseTime;
+  private final boolean leaseRenewal;
+  // Leases of the locks held by this node, by owner
+  private final ConcurrentMap<String, Lease> leases = new ConcurrentHashMap<>();
+  private final AtomicLong ownerSeq = new AtomicLong();
+  private final AtomicInteger pendingReleases = new AtomicInteger();
+  private final LongAdder releases = new LongAdder();
+  private final LongAdder releaseTime = new LongAdder();
+  // Waiters of this node, guarded by this
+  private final Map<String, LockQueue> queues = new HashMap<>();
+  private final QueryCursor<Cache.Entry<String, String>> locksCursor;
+
+  /**
+   * @param context          Context of the cluster manager, on which lease renewals run.
+   * @param maxLocalHandoffs Maximum number of times a lock is handed to a waiter of this node before being released
+   *                         to the cluster.
+   * @param leaseTime        Time in ms after which a lock expires if it is not renewed, {@code 0} for no expiry.
+   * @param leaseRenewal     Whether leases are renewed while the lock is held.
+   */
+  public LockHelper(Ignite ignite, VertxInternal vertx, ContextInternal context, String nodeId, int maxLocalHandoffs,
+                    long leaseTime, boolean leaseRenewal) {
+    map = ignite.getOrCreateCache("__vertx.locks");
+    this.vertx = vertx;
+    this.context = context;
+    this.nodeId = nodeId;
+    this.maxLocalHandoffs = maxLocalHandoffs;
+    this.leaseTime = leaseTime;
+    this.leaseRenewal = leaseRenewal;
+    leaseMap = leaseTime > 0 ?
+      map.withExpiryPolicy(new ModifiedExpiryPolicy(new Duration(TimeUnit.MILLISECONDS, leaseTime))) : map;
+    locksCursor = SubsMapHelper.listen(map, new ContinuousQuery<String, String>()
+      .setLocalListener(this::onUpdated)
+      .setRemoteFilter(new ReleaseFilter())
+      .setIncludeExpired(true)
+      .setAutoUnsubscribe(true));
+  }
+
+  public void acquire(String name, long timeout, Promise<Lock> promise) {
+    Waiter waiter = new Waiter(name, nodeId + "/" + ownerSeq.incrementAndGet(), promise);
+    // Set on the cluster manager context, a timer of the caller would be cancelled if its verticle is undeployed
+    context.runOnContext(v -> {
+      long timerId = vertx.setTimer(Math.max(1, timeout), id -> onTimeout(waiter));
+      synchronized (this) {
+        if (waiter.done) {
+          vertx.cancelTimer(timerId);
+        } else {
+          waiter.timerId = timerId;
+        }
+      }
+    });
+    synchronized (this) {
+      queues.computeIfAbsent(name, n -> new LockQueue()).waiters.add(waiter);
+    }
+    tryAcquire(name);
+  }
+
+  /**
+   * @return the number of lock releases not yet written to the cluster
+   */
+  public int pendingReleases() {
+    return pendingReleases.get();
+  }
+
+  /**
+   * @return the average time in ms taken to write a lock release to the cluster
+   */
+  public double averageReleaseLatency() {
+    long count = releases.sum();
+    return count == 0 ? 0 : releaseTime.sum() / (count * 1_000_000d);
+  }
+
+  /**
+   * Removes the locks held by a node which left the cluster.
+   */
+  public void removeAllForNode(String nodeId) {
+    String prefix = nodeId + "/";
+    try (QueryCursor<Cache.Entry<String, String>> cursor =
+           map.query(new ScanQuery<String, String>((k, v) -> v.startsWith(prefix)))) {
+      for (Cache.Entry<String, String> entry : cursor) {
+        map.remove(entry.getKey(), entry.getValue());
+      }
+    } catch (IllegalStateException | CacheException e) {
+      log.error("Failed to remove locks", e);
+    }
+  }
+
+  public void leave() {
+    locksCursor.close();
+    leases.values().forEach(this::endLease);
+    leases.clear();
+    synchronized (this) {
+      // Pending waiters are failed by their timers
+      queues.clear();
+    }
+  }
+
+  private void tryAcquire(String name) {
+    Waiter waiter;
+    synchronized (this) {
+      LockQueue queue = queues.get(name);
+      if (queue == null) {
+        return;
+      }
+      if (queue.attempting) {
+        // The entry may have been removed after it was read by the current attempt
+        queue.retry = true;
+        return;
+      }
+      waiter = queue.waiters.peek();
+      if (waiter == null) {
+        queues.remove(name);
+        return;
+      }
+      queue.attempting = true;
+      queue.retry = false;
+    }
+    // Measured before the write, so that the local deadline is never later than the expiry of the entry
+    long start = System.nanoTime();
+    execute(vertx, () -> leaseMap.putIfAbsentAsync(name, waiter.owner)).onComplete(ar -> {
+      boolean acquired = ar.succeeded() && ar.result();
+      boolean granted = false;
+      long timerId = -1;
+      boolean retry;
+      synchronized (this) {
+        LockQueue queue = queues.get(name);
+        if (queue != null) {
+          queue.attempting = false;
+          if (acquired || ar.failed()) {
+            queue.waiters.remove(waiter);
+          }
+          retry = ar.failed() || queue.retry;
+          if (queue.waiters.isEmpty()) {
+            queues.remove(name);
+          }
+        } else {
+          retry = false;
+        }
+        if ((acquired || ar.failed()) && !waiter.done) {
+          waiter.done = true;
+          granted = true;
+          timerId = waiter.timerId;
+        }
+      }
+      if (granted) {
+        if (timerId >= 0) {
+          vertx.cancelTimer(timerId);
+        }
+        if (acquired) {
+          startLease(name, waiter.owner, start);
+          waiter.promise.complete(new LockImpl(name, waiter.owner, 0));
+        } else {
+          waiter.promise.fail(ar.cause());
+        }
+      } else if (acquired) {
+        // The waiter timed out while the lock was being acquired
+        release(name, waiter.owner);
+      }
+      if (retry) {
+        tryAcquire(name);
+      }
+    });
+  }
+
+  private void onTimeout(Waiter waiter) {
+    synchronized (this) {
+      if (waiter.done) {
+        return;
+      }
+      waiter.done = true;
+      LockQueue queue = queues.get(waiter.name);
+      if (queue != null) {
+        queue.waiters.remove(waiter);
+        if (queue.waiters.isEmpty() && !queue.attempting) {
+          queues.remove(waiter.name);
+        }
+      }
+    }
+    waiter.promise.fail(new VertxException("Timed out waiting to get lock " + waiter.name));
+  }
+
+  private void onUpdated(Iterable<CacheEntryEvent<? extends String, ? extends String>> events) {
+    for (CacheEntryEvent<? extends String, ? extends String> event : events) {
+      if (event.getEventType() == EventType.EXPIRED) {
+        String owner = event.getOldValue() != null ? event.getOldValue() : event.getValue();
+        Lease lease = owner != null ? leases.get(owner) : null;
+        if (lease != null) {
+          log.warn("Lease of lock " + lease.name + " expired");
+          lease.lost = true;
+          endLease(lease);
+        }
+      }
+      if (event.getEventType() == EventType.REMOVED || event.getEventType() == EventType.EXPIRED) {
+        // Not on the Ignite notification thread, which must not issue cache operations
+        String name = event.getKey();
+        context.runOnContext(v -> tryAcquire(name));
+      }
+    }
+  }
+
+  private void unlock(LockImpl lock) {
+    Waiter next = null;
+    long timerId = -1;
+    synchronized (this) {
+      // Once the lease is lost, another node may hold the lock, so it must go through the cluster
+      LockQueue queue = lock.handoffs < maxLocalHandoffs && leaseValid(lock.owner) ? queues.get(lock.name) : null;
+      if (queue != null) {
+        Waiter waiter;
+        while ((waiter = queue.waiters.poll()) != null) {
+          if (!waiter.done) {
+            waiter.done = true;
+            next = waiter;
+            timerId = waiter.timerId;
+            break;
+          }
+        }
+        if (queue.waiters.isEmpty() && !queue.attempting) {
+          queues.remove(lock.name);
+        }
+      }
+    }
+    if (next != null) {
+      // The entry is kept, local waiters take turns before other nodes get a chance
+      if (timerId >= 0) {
+        vertx.cancelTimer(timerId);
+      }
+      next.promise.complete(new LockImpl(lock.name, lock.owner, lock.handoffs + 1));
+    } else {
+      release(lock.name, lock.owner);
+    }
+  }
+
+  private void startLease(String name, String owner, long start) {
+    if (leaseTime == 0) {
+      return;
+    }
+    Lease lease = new Lease(name, owner, start + TimeUnit.MILLISECONDS.toNanos(leaseTime));
+    leases.put(owner, lease);
+    if (leaseRenewal) {
+      context.runOnContext(v -> {
+        // Renewing several times per lease tolerates a slow or failed renewal
+        long timerId = vertx.setPeriodic(Math.max(1, leaseTime / 3), id -> renew(lease));
+        synchronized (lease) {
+          if (lease.ended) {
+            vertx.cancelTimer(timerId);
+          } else {
+            lease.timerId = timerId;
+          }
+        }
+      });
+    }
+  }
+
+  private boolean leaseValid(String owner) {
+    if (leaseTime == 0) {
+      return true;
+    }
+    Lease lease = leases.get(owner);
+    return lease != null && !lease.lost && System.nanoTime() - lease.deadline < 0;
+  }
+
+  private void renew(Lease lease) {
+    long start = System.nanoTime();
+    execute(vertx, () -> leaseMap.replaceAsync(lease.name, lease.owner, lease.owner)).onComplete(ar -> {
+      if (ar.failed()) {
+        log.warn("Failed to renew lease of lock " + lease.name, ar.cause());
+      } else if (ar.result()) {
+        lease.deadline = start + TimeUnit.MILLISECONDS.toNanos(leaseTime);
+      } else {
+        log.warn("Lease of lock " + lease.name + " expired");
+        lease.lost = true;
+        endLease(lease);
+      }
+    });
+  }
+
+  private void endLease(Lease lease) {
+    long timerId;
+    synchronized (lease) {
+      lease.ended = true;
+      timerId = lease.timerId;
+      lease.timerId = -1;
+    }
+    if (timerId >= 0) {
+      vertx.cancelTimer(timerId);
+    }
+  }
+
+  private void release(String name, String owner) {
+    Lease lease = leases.remove(owner);
+    if (lease != null) {
+      endLease(lease);
+    }
+    long start = System.nanoTime();
+    pendingReleases.incrementAndGet();
+    execute(vertx, () -> map.removeAsync(name, owner)).onComplete(ar -> {
+      pendingReleases.decrementAndGet();
+      releases.increment();
+      releaseTime.add(System.nanoTime() - start);
+      if (ar.failed()) {
+        log.error("Failed to release lock " + name, ar.cause());
+      }
+    });
+  }
+
+  /**
+   * Passes only lock releases, so that acquisitions and lease renewals are not sent to every node.
+   */
+  private static class ReleaseFilter implements CacheEntryEventSerializableFilter<String, String> {
+    @Override
+    public boolean evaluate(CacheEntryEvent<? extends String, ? extends String> event) {
+      return event.getEventType() == EventType.REMOVED || event.getEventType() == EventType.EXPIRED;
+    }
+  }
+
+  private static class LockQueue {
+    final Deque<Waiter> waiters = new ArrayDeque<>();
+    boolean attempting;
+    boolean retry;
+  }
+
+  private static class Lease {
+    final String name;
+    final String owner;
+    // When the lease ends unless renewed, and whether it was found expired
+    volatile long deadline;
+    volatile boolean lost;
+    // Renewal timer, guarded by this
+    long timerId = -1;
+    boolean ended;
+
+    Lease(String name, String owner, long deadline) {
+      this.name = name;
+      this.owner = owner;
+      this.deadline = deadline;
+    }
+  }
+
+  private static class Waiter {
+    final String name;
+    final String owner;
+    final Promise<Lock> promise;
+    // Guarded by the helper, set once the timeout timer is created on the cluster manager context
+    long timerId = -1;
+    boolean done;
+
+    Waiter(String name, String owner, Promise<Lock> promise) {
+      this.name = name;
+      this.owner = owner;
+      this.promise = promise;
+    }
+  }
+
+  private class LockImpl implements Lock {
+    private final String name;
+    private final String owner;
+    // Number of local handoffs since the lock was acquired from the cluster
+    private final int handoffs;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private LockImpl(String name, String owner, int handoffs) {
+      this.name = name;
+      this.owner = owner;
+      this.handoffs = handoffs;
+    }
+
+    @Override
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        unlock(this);
+      }
+    }
+  }
+}
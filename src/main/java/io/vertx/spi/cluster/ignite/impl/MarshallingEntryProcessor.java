@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import org.apache.ignite.cache.CacheEntryProcessor;
+
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.MutableEntry;
+
+import static io.vertx.spi.cluster.ignite.impl.ClusterSerializationUtils.marshal;
+import static io.vertx.spi.cluster.ignite.impl.ClusterSerializationUtils.unmarshal;
+
+/**
+ * Runs an entry processor of an async map against unmarshalled keys and values, so that it sees the same objects
+ * as the map users.
+ */
+public class MarshallingEntryProcessor<K, V, T> implements CacheEntryProcessor<K, V, T> {
+  private final CacheEntryProcessor<K, V, T> delegate;
+
+  public MarshallingEntryProcessor(CacheEntryProcessor<K, V, T> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public T process(MutableEntry<K, V> entry, Object... arguments) throws EntryProcessorException {
+    return marshal(delegate.process(new UnmarshalledEntry<>(entry), arguments));
+  }
+
+  private static class UnmarshalledEntry<K, V> implements MutableEntry<K, V> {
+    private final MutableEntry<K, V> entry;
+
+    UnmarshalledEntry(MutableEntry<K, V> entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public boolean exists() {
+      return entry.exists();
+    }
+
+    @Override
+    public void remove() {
+      entry.remove();
+    }
+
+    @Override
+    public void setValue(V value) {
+      entry.setValue(marshal(value));
+    }
+
+    @Override
+    public K getKey() {
+      return unmarshal(entry.getKey());
+    }
+
+    @Override
+    public V getValue() {
+      return unmarshal(entry.getValue());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+      return entry.unwrap(clazz);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.spi.cluster.ignite.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.shareddata.Counter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Counter handing out increments from ranges of values reserved on a shared {@link Counter}.
+ * <p>
+ * Values returned by {@link #incrementAndGet()} and {@link #getAndIncrement()} are unique across the cluster but
+ * only ordered on a given node. Other operations are applied to the shared counter, whose value is the end of the
+ * last reserved range.
+ */
+public class ReservingCounterImpl implements Counter {
+
+  private final Counter delegate;
+  private final VertxInternal vertx;
+  private final long reserveSize;
+  private final Deque<Promise<Long>> waiters = new ArrayDeque<>();
+  // Next value to hand out and end (exclusive) of the reserved range
+  private long next;
+  private long limit;
+  private boolean reserving;
+
+  /**
+   * @param delegate    shared counter.
+   * @param reserveSize Number of values reserved at once.
+   */
+  public ReservingCounterImpl(Counter delegate, VertxInternal vertx, long reserveSize) {
+    this.delegate = delegate;
+    this.vertx = vertx;
+    this.reserveSize = reserveSize;
+  }
+
+  @Override
+  public Future<Long> get() {
+    return delegate.get();
+  }
+
+  @Override
+  public void get(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    get().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> incrementAndGet() {
+    Promise<Long> promise;
+    synchronized (this) {
+      if (next < limit) {
+        return Future.succeededFuture(next++);
+      }
+      promise = vertx.getOrCreateContext().promise();
+      waiters.add(promise);
+      if (reserving) {
+        return promise.future();
+      }
+      reserving = true;
+    }
+    reserve();
+    return promise.future();
+  }
+
+  @Override
+  public void incrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    incrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndIncrement() {
+    return incrementAndGet().map(value -> value - 1);
+  }
+
+  @Override
+  public void getAndIncrement(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndIncrement().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> decrementAndGet() {
+    return delegate.decrementAndGet();
+  }
+
+  @Override
+  public void decrementAndGet(Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    decrementAndGet().onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> addAndGet(long value) {
+    return delegate.addAndGet(value);
+  }
+
+  @Override
+  public void addAndGet(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    addAndGet(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Long> getAndAdd(long value) {
+    return delegate.getAndAdd(value);
+  }
+
+  @Override
+  public void getAndAdd(long value, Handler<AsyncResult<Long>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    getAndAdd(value).onComplete(handler);
+  }
+
+  @Override
+  public Future<Boolean> compareAndSet(long expected, long value) {
+    return delegate.compareAndSet(expected, value);
+  }
+
+  @Override
+  public void compareAndSet(long expected, long value, Handler<AsyncResult<Boolean>> handler) {
+    Objects.requireNonNull(handler, "handler");
+    compareAndSet(expected, value).onComplete(handler);
+  }
+
+  private void reserve() {
+    delegate.addAndGet(reserveSize).onComplete(ar -> {
+      List<Promise<Long>> toComplete = new ArrayList<>();
+      List<Long> values = new ArrayList<>();
+      boolean reserveAgain;
+      synchronized (this) {
+        if (ar.succeeded()) {
+          // The shared counter now holds the end of the range reserved for this node
+          limit = ar.result() + 1;
+          next = limit - reserveSize;
+          while (next < limit && !waiters.isEmpty()) {
+            toComplete.add(waiters.poll());
+            values.add(next++);
+          }
+        } else {
+          toComplete.addAll(waiters);
+          waiters.clear();
+        }
+        reserveAgain = !waiters.isEmpty();
+        reserving = reserveAgain;
+      }
+      for (int i = 0; i < toComplete.size(); i++) {
+        if (ar.succeeded()) {
+          toComplete.get(i).complete(values.get(i));
+        } else {
+          toComplete.get(i).fail(ar.cause());
+        }
+      }
+      if (reserveAgain) {
+        reserve();
+      }
+    });
+  }
+}
@@ -17,7 +17,7 @@ package io.vertx.spi.cluster.ignite.impl;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
-import io.vertx.core.VertxException;
+import io.vertx.core.impl.ContextInternal;
 import io.vertx.core.impl.VertxInternal;
 import io.vertx.core.impl.logging.Logger;
 import io.vertx.core.impl.logging.LoggerFactory;
@@ -26,21 +26,36 @@ import io.vertx.core.spi.cluster.RegistrationInfo;
 import io.vertx.core.spi.cluster.RegistrationUpdateEvent;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
+import org.apache.ignite.IgniteCompute;
+import org.apache.ignite.cache.affinity.Affinity;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
 import org.apache.ignite.cache.query.ScanQuery;
-import org.apache.ignite.events.CacheEvent;
-import org.apache.ignite.events.Event;
-import org.apache.ignite.lang.IgnitePredicate;
+import org.apache.ignite.cluster.ClusterNode;
+import org.apache.ignite.lang.IgniteCallable;
+import org.apache.ignite.resources.IgniteInstanceResource;
 
 import javax.cache.Cache;
 import javax.cache.CacheException;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.EventType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static io.vertx.spi.cluster.ignite.impl.IgniteFutureUtils.execute;
 import static java.util.stream.Collectors.toList;
-import static org.apache.ignite.events.EventType.EVT_CACHE_OBJECT_PUT;
-import static org.apache.ignite.events.EventType.EVT_CACHE_OBJECT_REMOVED;
 
 /**
  * @author Thomas Segismont
@@ -48,84 +63,363 @@ import static org.apache.ignite.events.EventType.EVT_CACHE_OBJECT_REMOVED;
  */
 public class SubsMapHelper {
   private static final Logger log = LoggerFactory.getLogger(SubsMapHelper.class);
+  private static final int CONTINUOUS_QUERY_ATTEMPTS = 10;
   private final IgniteCache<IgniteRegistrationInfo, Boolean> map;
-  private IgnitePredicate<Event> eventListener;
+  private final IgniteCompute compute;
+  private final Affinity<IgniteRegistrationInfo> affinity;
+  private final ClusterNode localNode;
+  private final NodeSelector nodeSelector;
+  private final VertxInternal vertx;
+  // Context of the cluster manager, timers set on it outlive the verticles using the event bus
+  private final ContextInternal context;
+  private final long updateWindow;
+  // Addresses with registration changes not yet sent to the node selector
+  private final Set<String> dirtyAddresses = ConcurrentHashMap.newKeySet();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  // Node-local view of the registrations, kept current by a continuous query
+  private final ConcurrentMap<String, Set<RegistrationInfo>> localSubs = new ConcurrentHashMap<>();
+  // Registration keys of the local view indexed by node, used to clean up after a node leaves
+  private final ConcurrentMap<String, Set<IgniteRegistrationInfo>> nodeSubs = new ConcurrentHashMap<>();
+  private final QueryCursor<Cache.Entry<IgniteRegistrationInfo, Boolean>> localSubsCursor;
+  // Updates received while the initial entries are being loaded
+  private final Queue<CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean>> pendingEvents =
+    new ConcurrentLinkedQueue<>();
+  private volatile boolean initialized;
+  // Registration mutations waiting to be written with a single putAll/removeAll
+  private final long batchWindow;
+  private final int batchSize;
+  private final Object batchLock = new Object();
+  private Batch batch = new Batch();
+  private boolean flushScheduled;
+  private boolean flushing;
 
-  public SubsMapHelper(Ignite ignite, NodeSelector nodeSelector, VertxInternal vertxInternal) {
+  /**
+   * @param context      Context of the cluster manager, on which the helper sets its timers.
+   * @param updateWindow Time in ms during which registration changes of an address are coalesced into a single update.
+   * @param batchWindow  Time in ms during which registration mutations are collected before being written.
+   * @param batchSize    Maximum number of registration mutations written at once.
+   */
+  public SubsMapHelper(Ignite ignite, NodeSelector nodeSelector, VertxInternal vertxInternal, ContextInternal context,
+                       long updateWindow, long batchWindow, int batchSize) {
     map = ignite.getOrCreateCache("__vertx.subs");
-    this.eventListener = event -> this.listen(event, nodeSelector, vertxInternal);
+    compute = ignite.compute();
+    affinity = ignite.affinity(map.getName());
+    localNode = ignite.cluster().localNode();
+    this.nodeSelector = nodeSelector;
+    this.vertx = vertxInternal;
+    this.context = context;
+    this.updateWindow = updateWindow;
+    this.batchWindow = batchWindow;
+    this.batchSize = batchSize;
+    localSubsCursor = listen(map, new ContinuousQuery<IgniteRegistrationInfo, Boolean>()
+      .setInitialQuery(new ScanQuery<>())
+      .setLocalListener(this::onUpdated)
+      .setAutoUnsubscribe(true));
+    initLocalSubs();
+  }
 
-    ignite.events().localListen(this.eventListener, EVT_CACHE_OBJECT_PUT, EVT_CACHE_OBJECT_REMOVED);
+  /**
+   * Returns the registrations of an address known to this node, without blocking nor network I/O.
+   *
+   * @return the registrations or {@code null} if the address is unknown to the local view
+   */
+  public List<RegistrationInfo> getLocal(String address) {
+    // Continuous query events arrive asynchronously, a registration just written may not be in the view yet,
+    // so a missing address is looked up in the cache. The node selector caches the result, misses are rare.
+    Set<RegistrationInfo> infos = localSubs.get(address);
+    return infos != null ? new ArrayList<>(infos) : null;
   }
 
   public void get(String address, Promise<List<RegistrationInfo>> promise) {
-    try {
-      List<RegistrationInfo> infos = map.query(
-              new ScanQuery<IgniteRegistrationInfo, Boolean>((k, v) -> k.address().equals(address)))
-        .getAll().stream()
-        .map(Cache.Entry::getKey)
-        .map(IgniteRegistrationInfo::registrationInfo)
-        .collect(toList());
-      promise.complete(infos);
-    } catch (IllegalStateException | CacheException e) {
-      promise.fail(new VertxException(e));
-    }
+    // Registrations are affinity-keyed by address, so the primary node of the address scans its partition locally
+    execute(vertx, () -> compute.affinityCallAsync(map.getName(), address, new AddressQuery(map.getName(), address)))
+      .<List<RegistrationInfo>>map(keys -> keys.stream().map(IgniteRegistrationInfo::registrationInfo).collect(toList()))
+      .onComplete(promise);
   }
 
-  public Future<Void> put(String address, RegistrationInfo registrationInfo) {
-    try {
-      map.put(new IgniteRegistrationInfo(address, registrationInfo), Boolean.TRUE);
-    } catch (IllegalStateException | CacheException e) {
-      return Future.failedFuture(new VertxException(e));
-    }
-    return Future.succeededFuture();
+  public void put(String address, RegistrationInfo registrationInfo, Promise<Void> promise) {
+    addToBatch(new IgniteRegistrationInfo(address, registrationInfo), Boolean.TRUE, promise);
   }
 
   public void remove(String address, RegistrationInfo registrationInfo, Promise<Void> promise) {
-    try {
-      map.remove(new IgniteRegistrationInfo(address, registrationInfo));
-      promise.complete();
-    } catch (IllegalStateException | CacheException e) {
-      promise.fail(new VertxException(e));
-    }
+    addToBatch(new IgniteRegistrationInfo(address, registrationInfo), Boolean.FALSE, promise);
   }
 
-  public void removeAllForNode(String nodeId) {
-    Set<IgniteRegistrationInfo> toRemove =
-            map.query(new ScanQuery<IgniteRegistrationInfo, Boolean>((k, v) ->
-                    k.registrationInfo().nodeId().equals(nodeId)))
-      .getAll().stream()
-      .map(Cache.Entry::getKey)
-      .collect(Collectors.toSet());
+  /**
+   * Removes the registrations of a node which left the cluster.
+   *
+   * @param primaryOnly whether to remove only the registrations stored in primary partitions of this node
+   * @return the number of registrations removed
+   */
+  public int removeAllForNode(String nodeId, boolean primaryOnly) {
+    // Keys are taken from the node index, so the cost is proportional to the registrations of the node
+    Set<IgniteRegistrationInfo> keys = nodeSubs.get(nodeId);
+    if (keys == null) {
+      return 0;
+    }
+    int removed = 0;
+    Set<IgniteRegistrationInfo> toRemove = new LinkedHashSet<>();
     try {
-      map.removeAll(toRemove);
+      for (IgniteRegistrationInfo key : keys) {
+        if (primaryOnly && !affinity.isPrimary(localNode, key)) {
+          continue;
+        }
+        toRemove.add(key);
+        if (toRemove.size() == batchSize) {
+          map.removeAll(toRemove);
+          removed += toRemove.size();
+          toRemove.clear();
+        }
+      }
+      if (!toRemove.isEmpty()) {
+        map.removeAll(toRemove);
+        removed += toRemove.size();
+      }
     } catch (IllegalStateException | CacheException t) {
         log.error("Failed to remove all subscribers", t);
     }
+    return removed;
+  }
+
+  public void leave() {
+    localSubsCursor.close();
+    localSubs.clear();
+    nodeSubs.clear();
+  }
+
+  static <K, V> QueryCursor<Cache.Entry<K, V>> listen(IgniteCache<K, V> map, ContinuousQuery<K, V> query) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return map.query(query);
+      } catch (CacheException e) {
+        // Registration may fail while concurrent topology changes are being processed
+        if (attempt == CONTINUOUS_QUERY_ATTEMPTS) {
+          throw e;
+        }
+        log.debug("Failed to register continuous query on " + map.getName() + ", retrying", e);
+        try {
+          Thread.sleep(100L * attempt);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
   }
 
-  public void leave(Ignite ignite) {
-    if (eventListener != null) {
-      ignite.events().stopLocalListen(eventListener, EVT_CACHE_OBJECT_PUT, EVT_CACHE_OBJECT_REMOVED);
+  private void addToBatch(IgniteRegistrationInfo key, Boolean put, Promise<Void> promise) {
+    Batch toFlush = null;
+    synchronized (batchLock) {
+      // Only the last mutation of a registration matters
+      batch.ops.put(key, put);
+      batch.promises.computeIfAbsent(key, k -> new ArrayList<>()).add(promise);
+      if (flushing) {
+        // Flushes are serialized, the batch is picked up when the current one is committed
+        return;
+      }
+      if (batch.ops.size() >= batchSize) {
+        flushing = true;
+        toFlush = takeBatch();
+      } else if (!flushScheduled) {
+        flushScheduled = true;
+        if (batchWindow > 0) {
+          context.runOnContext(v -> vertx.setTimer(batchWindow, id -> onBatchWindowEnd()));
+        } else {
+          context.runOnContext(v -> onBatchWindowEnd());
+        }
+      }
     }
+    if (toFlush != null) {
+      flush(toFlush);
+    }
+  }
+
+  private void onBatchWindowEnd() {
+    Batch toFlush;
+    synchronized (batchLock) {
+      flushScheduled = false;
+      if (flushing || batch.ops.isEmpty()) {
+        return;
+      }
+      flushing = true;
+      toFlush = takeBatch();
+    }
+    flush(toFlush);
   }
 
-  boolean listen(Event event, final NodeSelector nodeSelector, final VertxInternal vertxInternal) {
-    if (!(event instanceof CacheEvent)) {
-      return true;
+  private Batch takeBatch() {
+    if (batch.ops.size() <= batchSize) {
+      Batch res = batch;
+      batch = new Batch();
+      return res;
     }
-    CacheEvent cacheEvent = (CacheEvent) event;
-    if (!Objects.equals(cacheEvent.cacheName(), map.getName())) {
-      return true;
+    // Mutations collected while a flush was running may exceed the batch size, the rest waits for the next flush
+    Batch res = new Batch();
+    Iterator<Map.Entry<IgniteRegistrationInfo, Boolean>> it = batch.ops.entrySet().iterator();
+    while (res.ops.size() < batchSize) {
+      Map.Entry<IgniteRegistrationInfo, Boolean> op = it.next();
+      it.remove();
+      res.ops.put(op.getKey(), op.getValue());
+      res.promises.put(op.getKey(), batch.promises.remove(op.getKey()));
     }
+    return res;
+  }
 
-    vertxInternal.<List<RegistrationInfo>>executeBlocking(listPromise -> {
-      String address = cacheEvent.<IgniteRegistrationInfo>key().address();
-      listPromise.future().onSuccess(registrationInfos ->
-              nodeSelector.registrationsUpdated(new RegistrationUpdateEvent(address, registrationInfos)
-      ));
-      get(address, listPromise);
+  private void flush(Batch toFlush) {
+    Map<IgniteRegistrationInfo, Boolean> puts = new LinkedHashMap<>();
+    Set<IgniteRegistrationInfo> removes = new LinkedHashSet<>();
+    toFlush.ops.forEach((key, put) -> {
+      if (put) {
+        puts.put(key, Boolean.TRUE);
+      } else {
+        removes.add(key);
+      }
+    });
+    Future<Void> fut = puts.isEmpty() ? Future.succeededFuture() : execute(vertx, () -> map.putAllAsync(puts));
+    if (!removes.isEmpty()) {
+      fut = fut.compose(v -> execute(vertx, () -> map.removeAllAsync(removes)));
+    }
+    fut.onComplete(ar -> {
+      for (List<Promise<Void>> promises : toFlush.promises.values()) {
+        for (Promise<Void> promise : promises) {
+          promise.handle(ar);
+        }
+      }
+      Batch next = null;
+      synchronized (batchLock) {
+        if (batch.ops.isEmpty()) {
+          flushing = false;
+        } else {
+          next = takeBatch();
+        }
+      }
+      if (next != null) {
+        flush(next);
+      }
     });
-    return true;
+  }
+
+  private void initLocalSubs() {
+    // The scan runs without holding the monitor, so that Ignite threads delivering updates are not blocked
+    for (Cache.Entry<IgniteRegistrationInfo, Boolean> entry : localSubsCursor) {
+      addLocal(entry.getKey());
+    }
+    synchronized (this) {
+      // Updates received while loading are newer than, or duplicates of, the initial entries
+      CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean> event;
+      while ((event = pendingEvents.poll()) != null) {
+        apply(event);
+      }
+      initialized = true;
+    }
+  }
+
+  private void onUpdated(Iterable<CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean>> events) {
+    if (!initialized) {
+      events.forEach(pendingEvents::add);
+      synchronized (this) {
+        if (!initialized) {
+          return;
+        }
+      }
+      // The initial load completed concurrently, events it did not drain are applied here
+      List<CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean>> remaining = new ArrayList<>();
+      CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean> event;
+      while ((event = pendingEvents.poll()) != null) {
+        remaining.add(event);
+      }
+      events = remaining;
+    }
+    for (CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean> event : events) {
+      dirtyAddresses.add(apply(event));
+    }
+    if (drainScheduled.compareAndSet(false, true)) {
+      if (updateWindow > 0) {
+        context.runOnContext(v -> vertx.setTimer(updateWindow, id -> drain()));
+      } else {
+        context.runOnContext(v -> drain());
+      }
+    }
+  }
+
+  private void drain() {
+    // Reset first so that changes made while draining schedule another drain
+    drainScheduled.set(false);
+    for (String address : dirtyAddresses) {
+      dirtyAddresses.remove(address);
+      Set<RegistrationInfo> infos = localSubs.get(address);
+      List<RegistrationInfo> registrations = infos != null ? new ArrayList<>(infos) : Collections.emptyList();
+      nodeSelector.registrationsUpdated(new RegistrationUpdateEvent(address, registrations));
+    }
+  }
+
+  private String apply(CacheEntryEvent<? extends IgniteRegistrationInfo, ? extends Boolean> event) {
+    if (event.getEventType() == EventType.REMOVED || event.getEventType() == EventType.EXPIRED) {
+      removeLocal(event.getKey());
+    } else {
+      addLocal(event.getKey());
+    }
+    return event.getKey().address();
+  }
+
+  private void addLocal(IgniteRegistrationInfo key) {
+    localSubs.compute(key.address(), (address, infos) -> {
+      Set<RegistrationInfo> res = infos != null ? infos : ConcurrentHashMap.newKeySet();
+      res.add(key.registrationInfo());
+      return res;
+    });
+    nodeSubs.compute(key.registrationInfo().nodeId(), (nodeId, keys) -> {
+      Set<IgniteRegistrationInfo> res = keys != null ? keys : ConcurrentHashMap.newKeySet();
+      res.add(key);
+      return res;
+    });
+  }
+
+  private void removeLocal(IgniteRegistrationInfo key) {
+    localSubs.computeIfPresent(key.address(), (address, infos) -> {
+      infos.remove(key.registrationInfo());
+      return infos.isEmpty() ? null : infos;
+    });
+    nodeSubs.computeIfPresent(key.registrationInfo().nodeId(), (nodeId, keys) -> {
+      keys.remove(key);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+  /**
+   * Collects the registrations of an address from the partition of the node it runs on.
+   * Submitted with affinity to the address so that the partition is owned and reserved during the scan.
+   */
+  private static class AddressQuery implements IgniteCallable<List<IgniteRegistrationInfo>> {
+    private final String cacheName;
+    private final String address;
+    @IgniteInstanceResource
+    private transient Ignite ignite;
+
+    private AddressQuery(String cacheName, String address) {
+      this.cacheName = cacheName;
+      this.address = address;
+    }
+
+    @Override
+    public List<IgniteRegistrationInfo> call() {
+      IgniteCache<IgniteRegistrationInfo, Boolean> cache = ignite.cache(cacheName);
+      ScanQuery<IgniteRegistrationInfo, Boolean> query = new ScanQuery<IgniteRegistrationInfo, Boolean>(
+        ignite.affinity(cacheName).partition(address), (k, v) -> k.address().equals(address))
+        .setLocal(true);
+      try (QueryCursor<Cache.Entry<IgniteRegistrationInfo, Boolean>> cursor = cache.query(query)) {
+        List<IgniteRegistrationInfo> res = new ArrayList<>();
+        for (Cache.Entry<IgniteRegistrationInfo, Boolean> entry : cursor) {
+          res.add(entry.getKey());
+        }
+        return res;
+      }
+    }
+  }
+
+  private static class Batch {
+    final Map<IgniteRegistrationInfo, Boolean> ops = new LinkedHashMap<>();
+    // Promises of the mutations coalesced into each operation
+    final Map<IgniteRegistrationInfo, List<Promise<Void>>> promises = new HashMap<>();
   }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Helpers shared by the tests of the Ignite specific features.
+ */
+public class ClusterTestUtils {
+
+  private static final long TIMEOUT_SECONDS = 30;
+
+  private ClusterTestUtils() {
+  }
+
+  /**
+   * Starts a clustered node, typically with {@code this::clusteredVertx} of the test, so that it is closed after the test.
+   */
+  public static Vertx startNode(BiConsumer<VertxOptions, Handler<AsyncResult<Vertx>>> clusteredVertx, VertxOptions options) {
+    Promise<Vertx> promise = Promise.promise();
+    clusteredVertx.accept(options, promise);
+    return assertSucceeded(promise.future());
+  }
+
+  public static IgniteClusterManager clusterManager(Vertx vertx) {
+    return (IgniteClusterManager) ((VertxInternal) vertx).getClusterManager();
+  }
+
+  /**
+   * Waits for the future to complete, must not be called on an event loop.
+   *
+   * @return the result of the future
+   */
+  public static <T> T assertSucceeded(Future<T> future) {
+    try {
+      return toCompletableFuture(future).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      throw new AssertionError("Future failed", e.getCause());
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Waits for the future to complete, must not be called on an event loop.
+   *
+   * @return the cause of the failure
+   */
+  public static Throwable assertFailed(Future<?> future) {
+    Object result;
+    try {
+      result = toCompletableFuture(future).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      return e.getCause();
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+    throw new AssertionError("Future succeeded with " + result);
+  }
+
+  private static <T> CompletableFuture<T> toCompletableFuture(Future<T> future) {
+    CompletableFuture<T> res = new CompletableFuture<>();
+    future.onComplete(ar -> {
+      if (ar.succeeded()) {
+        res.complete(ar.result());
+      } else {
+        res.completeExceptionally(ar.cause());
+      }
+    });
+    return res;
+  }
+}
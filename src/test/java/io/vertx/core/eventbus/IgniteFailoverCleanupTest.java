@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.core.eventbus;
+
+import io.vertx.Lifecycle;
+import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import io.vertx.spi.cluster.ignite.impl.IgniteRegistrationInfo;
+import io.vertx.spi.cluster.ignite.impl.SubsMapHelper;
+import io.vertx.test.core.VertxTestBase;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+
+/**
+ * Tests of the removal of the registrations and node info of a node which left the cluster.
+ */
+public class IgniteFailoverCleanupTest extends VertxTestBase {
+
+  private static final int REGISTRATIONS = 200;
+
+  @Rule
+  public LoggingTestWatcher watchman = new LoggingTestWatcher();
+
+  private boolean distributedFailoverCleanup;
+
+  @Override
+  protected ClusterManager getClusterManager() {
+    // Smaller than the registrations of the killed node, so that they are removed in several operations
+    return new IgniteClusterManager()
+      .setRegistrationsBatchSize(50)
+      .setDistributedFailoverCleanup(distributedFailoverCleanup);
+  }
+
+  @Test
+  public void testCleanupRemovesEntriesOfKilledNode() {
+    killNodeAndCheckCleanup();
+  }
+
+  @Test
+  public void testDistributedCleanupRemovesEntriesOfKilledNode() {
+    distributedFailoverCleanup = true;
+    killNodeAndCheckCleanup();
+  }
+
+  private void killNodeAndCheckCleanup() {
+    startNodes(3);
+    Vertx killed = vertices[2];
+    String killedId = clusterManager(killed).getNodeId();
+    List<Promise<Void>> registered = new ArrayList<>();
+    for (int i = 0; i < REGISTRATIONS; i++) {
+      Promise<Void> promise = Promise.promise();
+      killed.eventBus().consumer("address-" + i, msg -> {}).completionHandler(promise);
+      registered.add(promise);
+    }
+    registered.forEach(promise -> assertSucceeded(promise.future()));
+    // Survivors remove the registrations they know of
+    for (int i = 0; i < 2; i++) {
+      Vertx survivor = vertices[i];
+      assertWaitUntil(() -> indexedRegistrations(survivor, killedId) == REGISTRATIONS);
+    }
+    assertTrue(nodeInfo(vertices[0]).containsKey(killedId));
+
+    Ignition.stop(clusterManager(killed).getIgniteInstance().name(), true);
+
+    for (int i = 0; i < 2; i++) {
+      Vertx survivor = vertices[i];
+      assertWaitUntil(() -> storedRegistrations(survivor, killedId) == 0, 30_000);
+      assertWaitUntil(() -> !nodeInfo(survivor).containsKey(killedId), 30_000);
+      // The node index follows the removals, nothing is left behind for the departed node
+      assertWaitUntil(() -> indexedRegistrations(survivor, killedId) == 0);
+    }
+  }
+
+  @Override
+  protected void closeClustered(List<Vertx> clustered) throws Exception {
+    Lifecycle.closeClustered(clustered);
+  }
+
+  private static int storedRegistrations(Vertx vertx, String nodeId) {
+    IgniteCache<IgniteRegistrationInfo, Boolean> subs = clusterManager(vertx).getIgniteInstance().cache("__vertx.subs");
+    ScanQuery<IgniteRegistrationInfo, Boolean> query = new ScanQuery<>(
+      (k, v) -> k.registrationInfo().nodeId().equals(nodeId));
+    return subs.query(query).getAll().size();
+  }
+
+  private static IgniteCache<String, ?> nodeInfo(Vertx vertx) {
+    return clusterManager(vertx).getIgniteInstance().cache("__vertx.nodeInfo");
+  }
+
+  /**
+   * Reads the node index of the local view of the registrations, which has no public accessor.
+   */
+  @SuppressWarnings("unchecked")
+  private static int indexedRegistrations(Vertx vertx, String nodeId) {
+    try {
+      Field helperField = IgniteClusterManager.class.getDeclaredField("subsMapHelper");
+      helperField.setAccessible(true);
+      Field nodeSubsField = SubsMapHelper.class.getDeclaredField("nodeSubs");
+      nodeSubsField.setAccessible(true);
+      Object helper = helperField.get(clusterManager(vertx));
+      Set<?> keys = ((Map<String, Set<?>>) nodeSubsField.get(helper)).get(nodeId);
+      return keys != null ? keys.size() : 0;
+    } catch (ReflectiveOperationException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
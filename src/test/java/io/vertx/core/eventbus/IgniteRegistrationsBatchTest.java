@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.core.eventbus;
+
+import io.vertx.Lifecycle;
+import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.core.spi.cluster.RegistrationInfo;
+import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import io.vertx.spi.cluster.ignite.impl.IgniteRegistrationInfo;
+import io.vertx.test.core.VertxTestBase;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.CachePeekMode;
+import org.apache.ignite.cache.query.ContinuousQuery;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.cache.Cache;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.vertx.ClusterTestUtils.assertFailed;
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+
+/**
+ * Tests of the batched writes of event bus registrations.
+ */
+public class IgniteRegistrationsBatchTest extends VertxTestBase {
+
+  private static final String ADDRESS = "batched";
+
+  @Rule
+  public LoggingTestWatcher watchman = new LoggingTestWatcher();
+
+  private long batchWindow = TimeUnit.HOURS.toMillis(1);
+  private int batchSize = 10;
+
+  @Override
+  protected ClusterManager getClusterManager() {
+    return new IgniteClusterManager()
+      .setRegistrationsBatchWindow(batchWindow)
+      .setRegistrationsBatchSize(batchSize);
+  }
+
+  @Test
+  public void testPutAndRemoveOfSameRegistrationAreCoalesced() throws Exception {
+    batchWindow = 200;
+    startNodes(1);
+    IgniteClusterManager clusterManager = clusterManager(vertices[0]);
+    IgniteCache<IgniteRegistrationInfo, Boolean> cache = subs(vertices[0]);
+    AtomicInteger updates = new AtomicInteger();
+    RegistrationInfo info = new RegistrationInfo(clusterManager.getNodeId(), 1, false);
+    ContinuousQuery<IgniteRegistrationInfo, Boolean> query = new ContinuousQuery<IgniteRegistrationInfo, Boolean>()
+      .setLocalListener(events -> events.forEach(event -> updates.incrementAndGet()));
+    try (QueryCursor<Cache.Entry<IgniteRegistrationInfo, Boolean>> ignored = cache.query(query)) {
+      Promise<Void> put = Promise.promise();
+      Promise<Void> remove = Promise.promise();
+      vertices[0].runOnContext(v -> {
+        clusterManager.addRegistration(ADDRESS, info, put);
+        clusterManager.removeRegistration(ADDRESS, info, remove);
+      });
+      // Both callers are notified once the batch, with the remove only, is written
+      assertSucceeded(put.future());
+      assertSucceeded(remove.future());
+      Thread.sleep(200);
+      assertEquals(0, updates.get());
+      assertFalse(cache.containsKey(new IgniteRegistrationInfo(ADDRESS, info)));
+    }
+  }
+
+  @Test
+  public void testOversizedBatchIsSplitWhileFlushing() {
+    startNodes(1);
+    IgniteClusterManager clusterManager = clusterManager(vertices[0]);
+    IgniteCache<IgniteRegistrationInfo, Boolean> cache = subs(vertices[0]);
+    int count = 3 * batchSize + batchSize / 2;
+    List<IgniteRegistrationInfo> keys = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      keys.add(new IgniteRegistrationInfo(ADDRESS, new RegistrationInfo(clusterManager.getNodeId(), i, false)));
+    }
+    AtomicInteger completed = new AtomicInteger();
+    vertices[0].runOnContext(v -> {
+      // The first batch is written as soon as it is full, the others are collected while it is in flight
+      for (int i = 0; i < count; i++) {
+        int index = i;
+        Promise<Void> promise = Promise.promise();
+        clusterManager.addRegistration(ADDRESS, keys.get(index).registrationInfo(), promise);
+        promise.future().onComplete(onSuccess(res -> {
+          // Single node, a local peek sees the whole cache without blocking on the network
+          int end = Math.min(count, (index / batchSize + 1) * batchSize);
+          for (int j = 0; j < count; j++) {
+            boolean written = cache.localPeek(keys.get(j), CachePeekMode.PRIMARY) != null;
+            assertEquals("Registration " + j + " on completion of " + index, j < end, written);
+          }
+          if (completed.incrementAndGet() == count) {
+            testComplete();
+          }
+        }));
+      }
+    });
+    await();
+  }
+
+  @Test
+  public void testFailureIsPropagatedToEveryCaller() {
+    batchWindow = 0;
+    startNodes(1);
+    IgniteClusterManager clusterManager = clusterManager(vertices[0]);
+    clusterManager.getIgniteInstance().destroyCache("__vertx.subs");
+    int count = batchSize;
+    List<Future<Void>> futures = new CopyOnWriteArrayList<>();
+    vertices[0].runOnContext(v -> {
+      for (int i = 0; i < count; i++) {
+        Promise<Void> promise = Promise.promise();
+        clusterManager.addRegistration(ADDRESS, new RegistrationInfo(clusterManager.getNodeId(), i, false), promise);
+        futures.add(promise.future());
+      }
+    });
+    assertWaitUntil(() -> futures.size() == count);
+    for (Future<Void> future : futures) {
+      assertFailed(future);
+    }
+    // A failed flush does not prevent the next ones
+    RegistrationInfo info = new RegistrationInfo(clusterManager.getNodeId(), 0, false);
+    Promise<Void> promise = Promise.promise();
+    vertices[0].runOnContext(v -> clusterManager.removeRegistration(ADDRESS, info, promise));
+    assertFailed(promise.future());
+  }
+
+  @Override
+  protected void closeClustered(List<Vertx> clustered) throws Exception {
+    Lifecycle.closeClustered(clustered);
+  }
+
+  private static IgniteCache<IgniteRegistrationInfo, Boolean> subs(Vertx vertx) {
+    return clusterManager(vertx).getIgniteInstance().cache("__vertx.subs");
+  }
+}
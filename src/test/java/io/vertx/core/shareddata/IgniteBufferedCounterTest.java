@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.core.shareddata;
+
+import io.vertx.Lifecycle;
+import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Vertx;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import io.vertx.test.core.VertxTestBase;
+import org.apache.ignite.IgniteCache;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+
+/**
+ * Tests of counters made buffered with {@link IgniteClusterManager#addBufferedCounter(String)}.
+ */
+public class IgniteBufferedCounterTest extends VertxTestBase {
+
+  private static final String COUNTER = "buffered";
+
+  @Rule
+  public LoggingTestWatcher watchman = new LoggingTestWatcher();
+
+  private long flushInterval = TimeUnit.HOURS.toMillis(1);
+  private long flushThreshold = 1_000_000;
+
+  @Override
+  protected ClusterManager getClusterManager() {
+    return new IgniteClusterManager()
+      .addBufferedCounter(COUNTER)
+      .setCountersFlushInterval(flushInterval)
+      .setCountersFlushThreshold(flushThreshold);
+  }
+
+  @Test
+  public void testResultsAreMonotonicAcrossFlushes() {
+    flushThreshold = 10;
+    startNodes(1);
+    Counter counter = getCounter(vertices[0]);
+    AtomicLong expected = new AtomicLong();
+    // Increments are spread over several event loop turns, so that some happen while a flush is being written
+    vertices[0].setPeriodic(1, id -> {
+      for (int i = 0; i < 7; i++) {
+        counter.incrementAndGet(onSuccess(value -> assertEquals(expected.incrementAndGet(), value.longValue())));
+      }
+      if (expected.get() >= 1000) {
+        vertices[0].cancelTimer(id);
+        testComplete();
+      }
+    });
+    await();
+    assertWaitUntil(() -> sharedValue(vertices[0]) == expected.get());
+  }
+
+  @Test
+  public void testFlushOnThreshold() throws Exception {
+    flushThreshold = 10;
+    startNodes(1);
+    Counter counter = getCounter(vertices[0]);
+    assertEquals(9, assertSucceeded(counter.addAndGet(9)).longValue());
+    Thread.sleep(200);
+    assertEquals(0, sharedValue(vertices[0]));
+    assertEquals(10, assertSucceeded(counter.incrementAndGet()).longValue());
+    assertWaitUntil(() -> sharedValue(vertices[0]) == 10);
+  }
+
+  @Test
+  public void testGetIsStaleAtMostTwoFlushIntervals() {
+    flushInterval = 200;
+    startNodes(2);
+    Counter counter0 = getCounter(vertices[0]);
+    Counter counter1 = getCounter(vertices[1]);
+    assertEquals(0, assertSucceeded(counter1.get()).longValue());
+    assertEquals(5, assertSucceeded(counter0.addAndGet(5)).longValue());
+    long start = System.nanoTime();
+    // The writer flushes within an interval, the reader refreshes its shared value within another one
+    assertWaitUntil(() -> assertSucceeded(counter1.get()) == 5);
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("Stale for " + elapsed + " ms", elapsed < 2 * flushInterval + 1000);
+  }
+
+  @Test
+  public void testFlushOnLeave() throws Exception {
+    startNodes(2);
+    Counter counter = getCounter(vertices[0]);
+    assertEquals(7, assertSucceeded(counter.addAndGet(7)).longValue());
+    assertEquals(0, sharedValue(vertices[1]));
+    CountDownLatch latch = new CountDownLatch(1);
+    vertices[0].close(onSuccess(v -> latch.countDown()));
+    awaitLatch(latch);
+    assertEquals(7, sharedValue(vertices[1]));
+  }
+
+  @Override
+  protected void closeClustered(List<Vertx> clustered) throws Exception {
+    Lifecycle.closeClustered(clustered);
+  }
+
+  private static Counter getCounter(Vertx vertx) {
+    return assertSucceeded(vertx.sharedData().getCounter(COUNTER));
+  }
+
+  private static long sharedValue(Vertx vertx) {
+    IgniteCache<String, Long> cache = clusterManager(vertx).getIgniteInstance().cache("__vertx.counters");
+    Long value = cache.get(COUNTER);
+    return value != null ? value : 0L;
+  }
+}
@@ -19,12 +19,31 @@ package io.vertx.core.shareddata;
 
 import io.vertx.Lifecycle;
 import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.spi.cluster.ignite.IgniteAsyncMap;
 import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import org.apache.ignite.cache.CacheEntryProcessor;
 import org.junit.Rule;
+import org.junit.Test;
 
+import javax.cache.processor.MutableEntry;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+import static io.vertx.ClusterTestUtils.startNode;
 
 /**
  * @author Andrey Gura
@@ -39,8 +58,196 @@ public class IgniteClusteredAsyncMapTest extends ClusteredAsyncMapTest {
     return new IgniteClusterManager();
   }
 
+  @Test
+  public void testEntriesStreamPauseAndFetch() throws Exception {
+    IgniteAsyncMap<String, Integer> map = igniteAsyncMap(getVertx(), "stream-fetch");
+    assertSucceeded(map.putAll(entries(25)));
+    ReadStream<Map.Entry<String, Integer>> stream = map.entriesStream(10);
+    Map<String, Integer> received = new ConcurrentHashMap<>();
+    AtomicBoolean ended = new AtomicBoolean();
+    stream.pause();
+    stream.handler(entry -> received.put(entry.getKey(), entry.getValue()));
+    stream.endHandler(v -> ended.set(true));
+    stream.fetch(5);
+    assertWaitUntil(() -> received.size() == 5);
+    Thread.sleep(200);
+    assertEquals(5, received.size());
+    // Crosses a page boundary
+    stream.fetch(10);
+    assertWaitUntil(() -> received.size() == 15);
+    Thread.sleep(200);
+    assertEquals(15, received.size());
+    assertFalse(ended.get());
+    stream.resume();
+    assertWaitUntil(ended::get);
+    assertEquals(entries(25), received);
+  }
+
+  @Test
+  public void testEntriesStreamEndsAtPageMultiple() throws Exception {
+    testEntriesStreamEnds(30, 10);
+  }
+
+  @Test
+  public void testEntriesStreamEndsOnEmptyMap() throws Exception {
+    testEntriesStreamEnds(0, 10);
+  }
+
+  private void testEntriesStreamEnds(int size, int pageSize) throws Exception {
+    IgniteAsyncMap<String, Integer> map = igniteAsyncMap(getVertx(), "stream-end-" + size);
+    if (size > 0) {
+      assertSucceeded(map.putAll(entries(size)));
+    }
+    Map<String, Integer> received = new ConcurrentHashMap<>();
+    AtomicInteger ends = new AtomicInteger();
+    map.entriesStream(pageSize)
+      .endHandler(v -> ends.incrementAndGet())
+      .handler(entry -> received.put(entry.getKey(), entry.getValue()));
+    assertWaitUntil(() -> ends.get() > 0);
+    Thread.sleep(200);
+    assertEquals(1, ends.get());
+    assertEquals(entries(size), received);
+  }
+
+  @Test
+  public void testEntriesStreamHandlerRemoval() throws Exception {
+    IgniteAsyncMap<String, Integer> map = igniteAsyncMap(getVertx(), "stream-removal");
+    assertSucceeded(map.putAll(entries(40)));
+    ReadStream<Map.Entry<String, Integer>> stream = map.entriesStream(10);
+    AtomicInteger count = new AtomicInteger();
+    AtomicBoolean ended = new AtomicBoolean();
+    stream.endHandler(v -> ended.set(true));
+    stream.handler(entry -> {
+      if (count.incrementAndGet() == 5) {
+        stream.handler(null);
+      }
+    });
+    assertWaitUntil(() -> count.get() == 5);
+    Thread.sleep(200);
+    assertEquals(5, count.get());
+    assertFalse(ended.get());
+  }
+
+  @Test
+  public void testParallelEntries() {
+    Vertx node = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setMapScanParallelism(4)));
+    IgniteAsyncMap<String, JsonObject> map = igniteAsyncMap(node, "parallel-entries");
+    Map<String, JsonObject> expected = new HashMap<>();
+    for (int i = 0; i < 500; i++) {
+      expected.put("key-" + i, new JsonObject().put("value", i));
+    }
+    assertSucceeded(map.putAll(expected));
+    assertEquals(expected, assertSucceeded(map.entries()));
+    assertEquals(expected.keySet(), assertSucceeded(map.keys()));
+    assertEquals(new HashSet<>(expected.values()), new HashSet<>(assertSucceeded(map.values())));
+  }
+
+  @Test
+  public void testKnownAsyncMapIsReturnedWithoutWorker() {
+    IgniteClusterManager clusterManager = clusterManager(getVertx());
+    Promise<AsyncMap<String, String>> first = Promise.promise();
+    clusterManager.getAsyncMap("known", first);
+    AsyncMap<String, String> map = assertSucceeded(first.future());
+    Promise<AsyncMap<String, String>> second = Promise.promise();
+    clusterManager.getAsyncMap("known", second);
+    // Completed before returning, a worker would complete it later
+    assertTrue(second.future().isComplete());
+    assertSame(map, second.future().result());
+  }
+
+  @Test
+  public void testBulkOperations() {
+    IgniteAsyncMap<JsonObject, JsonObject> map = igniteAsyncMap(getVertx(), "bulk");
+    IgniteAsyncMap<JsonObject, JsonObject> other = igniteAsyncMap(getVertx(), "bulk");
+    Map<JsonObject, JsonObject> entries = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      entries.put(new JsonObject().put("id", i), new JsonObject().put("value", i));
+    }
+    assertSucceeded(map.putAll(entries));
+    Set<JsonObject> keys = new HashSet<>(entries.keySet());
+    keys.add(new JsonObject().put("id", "missing"));
+    assertEquals(entries, assertSucceeded(other.getAll(keys)));
+    Set<JsonObject> removed = new HashSet<>();
+    for (int i = 0; i < 5; i++) {
+      removed.add(new JsonObject().put("id", i));
+    }
+    assertSucceeded(map.removeAll(removed));
+    Map<JsonObject, JsonObject> expected = new HashMap<>(entries);
+    expected.keySet().removeAll(removed);
+    assertEquals(expected, assertSucceeded(other.getAll(entries.keySet())));
+  }
+
+  @Test
+  public void testPutAllWithTtl() throws Exception {
+    IgniteAsyncMap<String, JsonObject> map = igniteAsyncMap(getVertx(), "bulk-ttl");
+    Map<String, JsonObject> entries = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      entries.put("key-" + i, new JsonObject().put("value", i));
+    }
+    long ttl = 1000;
+    assertSucceeded(map.putAll(entries, ttl));
+    assertSucceeded(map.put("eternal", new JsonObject().put("value", -1)));
+    assertEquals(entries, assertSucceeded(map.getAll(entries.keySet())));
+    Thread.sleep(ttl + 500);
+    assertEquals(Collections.emptyMap(), assertSucceeded(map.getAll(entries.keySet())));
+    assertEquals(new JsonObject().put("value", -1), assertSucceeded(map.get("eternal")));
+  }
+
+  @Test
+  public void testInvoke() {
+    IgniteAsyncMap<String, JsonObject> map = igniteAsyncMap(getVertx(), "invoke");
+    assertSucceeded(map.put("counter", new JsonObject().put("count", 1)));
+    assertEquals(1, assertSucceeded(map.invoke("counter", new IncrementProcessor())).intValue());
+    assertEquals(new JsonObject().put("count", 2), assertSucceeded(map.get("counter")));
+    assertEquals(0, assertSucceeded(map.invoke("missing", new IncrementProcessor())).intValue());
+    assertEquals(new JsonObject().put("count", 1), assertSucceeded(map.get("missing")));
+  }
+
+  @Test
+  public void testInvokeAll() {
+    IgniteAsyncMap<String, JsonObject> map = igniteAsyncMap(getVertx(), "invoke-all");
+    assertSucceeded(map.put("a", new JsonObject().put("count", 1)));
+    assertSucceeded(map.put("b", new JsonObject().put("count", 5)));
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("a", 1);
+    expected.put("b", 5);
+    expected.put("c", 0);
+    assertEquals(expected, assertSucceeded(map.invokeAll(expected.keySet(), new IncrementProcessor())));
+    Map<String, JsonObject> values = new HashMap<>();
+    values.put("a", new JsonObject().put("count", 2));
+    values.put("b", new JsonObject().put("count", 6));
+    values.put("c", new JsonObject().put("count", 1));
+    assertEquals(values, assertSucceeded(map.getAll(values.keySet())));
+  }
+
   @Override
   protected void closeClustered(List<Vertx> clustered) throws Exception {
     Lifecycle.closeClustered(clustered);
   }
+
+  private <K, V> IgniteAsyncMap<K, V> igniteAsyncMap(Vertx vertx, String name) {
+    return assertSucceeded(clusterManager(vertx).<K, V>getIgniteAsyncMap(name));
+  }
+
+  private static Map<String, Integer> entries(int size) {
+    Map<String, Integer> entries = new HashMap<>();
+    for (int i = 0; i < size; i++) {
+      entries.put("key-" + i, i);
+    }
+    return entries;
+  }
+
+  /**
+   * Increments the count of a JSON value and returns the previous count.
+   */
+  private static class IncrementProcessor implements CacheEntryProcessor<String, JsonObject, Integer> {
+    @Override
+    public Integer process(MutableEntry<String, JsonObject> entry, Object... arguments) {
+      JsonObject value = entry.exists() ? entry.getValue() : new JsonObject().put("count", 0);
+      int count = value.getInteger("count");
+      entry.setValue(value.copy().put("count", count + 1));
+      return count;
+    }
+  }
 }
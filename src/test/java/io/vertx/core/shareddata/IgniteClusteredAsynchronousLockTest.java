@@ -19,13 +19,24 @@ package io.vertx.core.shareddata;
 
 import io.vertx.Lifecycle;
 import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.spi.cluster.ClusterManager;
 import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import org.apache.ignite.IgniteCache;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static io.vertx.ClusterTestUtils.assertFailed;
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+import static io.vertx.ClusterTestUtils.startNode;
 
 /**
  * @author Andrey Gura
@@ -52,6 +63,81 @@ public class IgniteClusteredAsynchronousLockTest extends ClusteredAsynchronousLo
     super.testLockReleasedForKilledNode();
   }
 
+  @Test
+  public void testLeaseExpiresWithoutRenewal() {
+    Vertx holder = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(500).setLockLeaseRenewal(false)));
+    Vertx waiter = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(500).setLockLeaseRenewal(false)));
+    // Never released
+    assertSucceeded(holder.sharedData().getLockWithTimeout("lease", 10_000));
+    assertFailed(waiter.sharedData().getLockWithTimeout("lease", 100));
+    Lock lock = assertSucceeded(waiter.sharedData().getLockWithTimeout("lease", 10_000));
+    lock.release();
+  }
+
+  @Test
+  public void testRenewalKeepsLock() {
+    Vertx holder = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(300)));
+    Vertx waiter = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(300)));
+    Lock lock = assertSucceeded(holder.sharedData().getLockWithTimeout("renewed", 10_000));
+    // Several lease times
+    assertFailed(waiter.sharedData().getLockWithTimeout("renewed", 1500));
+    lock.release();
+    assertSucceeded(waiter.sharedData().getLockWithTimeout("renewed", 10_000)).release();
+  }
+
+  @Test
+  public void testNoLocalHandoffAfterLeaseLoss() throws Exception {
+    Vertx local = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(300).setLockLeaseRenewal(false)));
+    Vertx remote = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockLeaseTime(300)));
+    Lock expired = assertSucceeded(local.sharedData().getLockWithTimeout("lost", 10_000));
+    // Acquired once the lease of the first holder has expired
+    Lock remoteLock = assertSucceeded(remote.sharedData().getLockWithTimeout("lost", 10_000));
+    Future<Lock> localWaiter = local.sharedData().getLockWithTimeout("lost", 10_000);
+    expired.release();
+    Thread.sleep(500);
+    assertFalse("Lock handed off while held by another node", localWaiter.isComplete());
+    remoteLock.release();
+    assertSucceeded(localWaiter).release();
+  }
+
+  @Test
+  public void testLocalHandoffsAreLimited() throws Exception {
+    int maxLocalHandoffs = 2;
+    Vertx node = startNode(this::clusteredVertx,
+      getOptions().setClusterManager(new IgniteClusterManager().setLockMaxLocalHandoffs(maxLocalHandoffs)));
+    IgniteCache<String, String> locks = clusterManager(node).getIgniteInstance().cache("__vertx.locks");
+    int count = 3 * (maxLocalHandoffs + 1);
+    List<String> owners = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(count);
+    node.runOnContext(v -> {
+      for (int i = 0; i < count; i++) {
+        node.sharedData().getLockWithTimeout("handoffs", 10_000, onSuccess(lock -> {
+          Context context = node.getOrCreateContext();
+          // The entry is kept during a local handoff and written again with a new owner after a cluster release
+          locks.getAsync("handoffs").listen(fut -> context.runOnContext(v2 -> {
+            owners.add(fut.get());
+            lock.release();
+            latch.countDown();
+          }));
+        }));
+      }
+    });
+    awaitLatch(latch);
+    for (int i = 0; i < count; i++) {
+      int run = i / (maxLocalHandoffs + 1);
+      assertEquals(owners.get(run * (maxLocalHandoffs + 1)), owners.get(i));
+      if (run > 0) {
+        assertFalse(owners.get(i).equals(owners.get((run - 1) * (maxLocalHandoffs + 1))));
+      }
+    }
+  }
+
   @Override
   protected void closeClustered(List<Vertx> clustered) throws Exception {
     Lifecycle.closeClustered(clustered);
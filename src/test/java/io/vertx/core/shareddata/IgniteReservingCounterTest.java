@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Red Hat, Inc.
+ *
+ * Red Hat licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.vertx.core.shareddata;
+
+import io.vertx.Lifecycle;
+import io.vertx.LoggingTestWatcher;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import io.vertx.test.core.VertxTestBase;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static io.vertx.ClusterTestUtils.assertSucceeded;
+import static io.vertx.ClusterTestUtils.clusterManager;
+
+/**
+ * Tests of counters made reserving with {@link IgniteClusterManager#addReservingCounter(String, long)}.
+ */
+public class IgniteReservingCounterTest extends VertxTestBase {
+
+  private static final String COUNTER = "reserving";
+  private static final long RESERVE_SIZE = 5;
+
+  @Rule
+  public LoggingTestWatcher watchman = new LoggingTestWatcher();
+
+  @Override
+  protected ClusterManager getClusterManager() {
+    return new IgniteClusterManager().addReservingCounter(COUNTER, RESERVE_SIZE);
+  }
+
+  @Test
+  public void testIncrementAndGetUniqueAcrossNodes() {
+    testUniqueAcrossNodes(Counter::incrementAndGet);
+  }
+
+  @Test
+  public void testGetAndIncrementUniqueAcrossNodes() {
+    testUniqueAcrossNodes(Counter::getAndIncrement);
+  }
+
+  private void testUniqueAcrossNodes(Function<Counter, Future<Long>> operation) {
+    int nodes = 3;
+    int perNode = 100;
+    startNodes(nodes);
+    Set<Long> values = ConcurrentHashMap.newKeySet();
+    AtomicInteger remaining = new AtomicInteger(nodes * perNode);
+    for (int i = 0; i < nodes; i++) {
+      Counter counter = getCounter(vertices[i]);
+      vertices[i].runOnContext(v -> {
+        // Requests issued at once wait for the ranges being reserved
+        for (int j = 0; j < perNode; j++) {
+          operation.apply(counter).onComplete(onSuccess(value -> {
+            assertTrue("Duplicate value " + value, values.add(value));
+            if (remaining.decrementAndGet() == 0) {
+              testComplete();
+            }
+          }));
+        }
+      });
+    }
+    await();
+    assertEquals(nodes * perNode, values.size());
+  }
+
+  @Test
+  public void testRangeRolloverWithQueuedWaiters() {
+    startNodes(1);
+    Counter counter = getCounter(vertices[0]);
+    int count = 23;
+    List<Long> values = new ArrayList<>();
+    vertices[0].runOnContext(v -> {
+      for (int i = 0; i < count; i++) {
+        counter.incrementAndGet(onSuccess(value -> {
+          values.add(value);
+          if (values.size() == count) {
+            testComplete();
+          }
+        }));
+      }
+    });
+    await();
+    // Waiters are served in order, from consecutive ranges
+    for (int i = 0; i < count; i++) {
+      assertEquals(i + 1, values.get(i).longValue());
+    }
+    long ranges = (count + RESERVE_SIZE - 1) / RESERVE_SIZE;
+    assertEquals(ranges * RESERVE_SIZE, assertSucceeded(counter.get()).longValue());
+  }
+
+  @Test
+  public void testReservationFailureFailsWaiters() {
+    startNodes(1);
+    Counter counter = getCounter(vertices[0]);
+    clusterManager(vertices[0]).getIgniteInstance().destroyCache("__vertx.counters");
+    int count = 3;
+    AtomicInteger failures = new AtomicInteger();
+    vertices[0].runOnContext(v -> {
+      for (int i = 0; i < count; i++) {
+        counter.incrementAndGet(ar -> {
+          assertTrue(ar.failed());
+          if (failures.incrementAndGet() == count) {
+            testComplete();
+          }
+        });
+      }
+    });
+    await();
+  }
+
+  @Override
+  protected void closeClustered(List<Vertx> clustered) throws Exception {
+    Lifecycle.closeClustered(clustered);
+  }
+
+  private static Counter getCounter(Vertx vertx) {
+    return assertSucceeded(vertx.sharedData().getCounter(COUNTER));
+  }
+}